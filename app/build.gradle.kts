@@ -32,6 +32,12 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    testOptions {
+        unitTests.all {
+            // Benchmark du regroupement : ./gradlew testDebugUnitTest -Dsafecity.benchmark=true
+            it.systemProperty("safecity.benchmark", System.getProperty("safecity.benchmark") ?: "false")
+        }
+    }
 }
 
 dependencies {
@@ -51,6 +57,7 @@ dependencies {
     // --- UI et Utils ---
     implementation("androidx.swiperefreshlayout:swiperefreshlayout:1.1.0")
     implementation("androidx.fragment:fragment:1.8.9")
+    implementation("androidx.work:work-runtime:2.9.1")
 
     // --- Maps et Localisation ---
     implementation("com.google.android.gms:play-services-maps:18.2.0")
@@ -21,13 +21,20 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
+import androidx.work.Data;
+import androidx.work.WorkInfo;
 
 import com.example.safecity.ui.fragments.HomeFragment;
 import com.example.safecity.ui.fragments.MapFragment;
 import com.example.safecity.ui.fragments.NotificationsFragment;
 import com.example.safecity.ui.fragments.ProfileFragment;
 import com.example.safecity.ui.fragments.SignalementFragment;
+import com.example.safecity.utils.FirestoreRepository;
+import com.example.safecity.utils.IncidentOutbox;
 import com.example.safecity.utils.LocationHelper;
+import com.example.safecity.utils.OutboxWorker;
+import com.example.safecity.utils.SyncEngine;
+import com.google.android.material.badge.BadgeDrawable;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.android.material.floatingactionbutton.ExtendedFloatingActionButton;
@@ -35,6 +42,12 @@ import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.messaging.FirebaseMessaging;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
 public class MainActivity extends AppCompatActivity implements LocationHelper.LocationListener, NotificationsFragment.NotificationNavigationListener {
 
     private BottomNavigationView bottomNav;
@@ -66,9 +79,115 @@ public class MainActivity extends AppCompatActivity implements LocationHelper.Lo
         }
 
         subscribeToUserTopic();
+        watchCurrentUserProfile();
         handleNotificationIntent(getIntent());
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        refreshUnreadBadge();
+    }
+
+    /**
+     * Badge des notifications non lues : un agrégat count() à chaque retour sur l'écran,
+     * au lieu d'une écoute de la liste pendant toute la session.
+     */
+    private void refreshUnreadBadge() {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) return;
+        new FirestoreRepository("main").countUnreadNotifications(user.getUid(), new FirestoreRepository.OnCountLoadedListener() {
+            @Override
+            public void onCountLoaded(long count) {
+                if (isFinishing() || isDestroyed()) return;
+                // Sur l'écran des notifications, elles sont marquées lues à l'ouverture
+                if (count == 0 || bottomNav.getSelectedItemId() == R.id.nav_activity) {
+                    bottomNav.removeBadge(R.id.nav_activity);
+                } else {
+                    BadgeDrawable badge = bottomNav.getOrCreateBadge(R.id.nav_activity);
+                    badge.setMaxCharacterCount(3); // « 99+ » au-delà
+                    badge.setNumber((int) Math.min(count, Integer.MAX_VALUE));
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e("MainActivity", "Compteur de notifications indisponible", e);
+            }
+        });
+    }
+
+    @Override
+    public void onNotificationsRead() {
+        bottomNav.removeBadge(R.id.nav_activity);
+    }
+
+    /**
+     * Garde le profil de l'utilisateur connecté en cache : les écrans qui en ont besoin
+     * (rôle, avatar, nom) l'obtiennent sans aller-retour réseau.
+     * L'index de ses likes est synchronisé de la même façon, et la base locale rattrape
+     * les incidents modifiés depuis la dernière ouverture, et les signalements restés
+     * dans l'outbox sont renvoyés.
+     */
+    private void watchCurrentUserProfile() {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) return;
+        FirestoreRepository repo = new FirestoreRepository("main");
+        repo.watchCurrentUser(user.getUid());
+        repo.watchCurrentUserLikes(user.getUid());
+        SyncEngine.getInstance(this).syncIncidents(null);
+        IncidentOutbox.schedule(this);
+        observeOutbox();
+    }
+
+    /**
+     * Annonce les signalements mis en file dès leur publication (points compris), et ceux
+     * abandonnés après trop d'essais. La progression est suivie pendant l'envoi : une exécution
+     * relancée plus tard (Result.retry) a déjà annoncé ce qu'elle avait publié.
+     * Seuls les envois vus en cours depuis l'ouverture de l'écran sont annoncés.
+     */
+    private void observeOutbox() {
+        Set<UUID> running = new HashSet<>();
+        // Déjà annoncé, par exécution (travail + numéro d'essai) : { publiés, abandonnés }
+        Map<String, int[]> announced = new HashMap<>();
+        IncidentOutbox.observe(this).observe(this, infos -> {
+            for (WorkInfo info : infos) {
+                Data data;
+                if (!info.getState().isFinished()) {
+                    running.add(info.getId());
+                    data = info.getProgress();
+                } else if (running.remove(info.getId()) && info.getState() == WorkInfo.State.SUCCEEDED) {
+                    data = info.getOutputData();
+                } else {
+                    continue;
+                }
+                String run = info.getId() + ":" + info.getRunAttemptCount();
+                int[] seen = announced.get(run);
+                if (seen == null) {
+                    seen = new int[2];
+                    announced.put(run, seen);
+                }
+                int sent = data.getInt(OutboxWorker.KEY_SENT, 0);
+                int failed = data.getInt(OutboxWorker.KEY_FAILED, 0);
+                announceOutbox(Math.max(0, sent - seen[0]), Math.max(0, failed - seen[1]));
+                seen[0] = Math.max(seen[0], sent);
+                seen[1] = Math.max(seen[1], failed);
+            }
+        });
+    }
+
+    private void announceOutbox(int sent, int failed) {
+        if (sent > 0) {
+            int points = sent * FirestoreRepository.INCIDENT_SCORE_POINTS;
+            Toast.makeText(this, (sent == 1 ? "Signalement publié !" : sent + " signalements publiés !")
+                    + " (+" + points + " pts)", Toast.LENGTH_SHORT).show();
+        }
+        if (failed > 0) {
+            Toast.makeText(this, failed == 1 ? "Un signalement n'a pas pu être publié."
+                    : failed + " signalements n'ont pas pu être publiés.", Toast.LENGTH_LONG).show();
+        }
+    }
+
     private void setupBottomNav() {
         bottomNav.setOnItemSelectedListener(item -> {
             Fragment selectedFragment = null;
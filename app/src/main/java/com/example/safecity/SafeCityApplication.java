@@ -0,0 +1,33 @@
+package com.example.safecity;
+
+import android.app.Application;
+import android.content.pm.ApplicationInfo;
+
+import com.example.safecity.utils.RepositoryMetrics;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
+import com.google.firebase.firestore.PersistentCacheSettings;
+
+/**
+ * Configuration globale, appliquée avant le premier accès à Firestore.
+ */
+public class SafeCityApplication extends Application {
+
+    /** Taille maximale du cache persistant de Firestore, dont dépendent les lectures « cache d'abord ». */
+    public static final long FIRESTORE_CACHE_SIZE_BYTES = 50L * 1024 * 1024;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        FirebaseFirestoreSettings settings = new FirebaseFirestoreSettings.Builder()
+                .setLocalCacheSettings(PersistentCacheSettings.newBuilder()
+                        .setSizeBytes(FIRESTORE_CACHE_SIZE_BYTES)
+                        .build())
+                .build();
+        FirebaseFirestore.getInstance().setFirestoreSettings(settings);
+
+        // La taille des documents lus n'est estimée qu'en debug : elle relit chaque document
+        boolean debuggable = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        RepositoryMetrics.getInstance().setSizeEstimation(debuggable);
+    }
+}
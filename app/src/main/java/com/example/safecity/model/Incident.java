@@ -4,10 +4,9 @@ import com.google.android.gms.maps.model.LatLng;
 import com.google.maps.android.clustering.ClusterItem;
 import com.google.firebase.firestore.Exclude;
 import com.google.firebase.firestore.IgnoreExtraProperties;
+import com.google.firebase.firestore.ServerTimestamp;
 
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
 
 /**
  * Modèle représentant un incident signalé dans SafeCity.
@@ -29,6 +28,7 @@ public class Incident implements ClusterItem {
     private String idCategorie;
     private double latitude;
     private double longitude;
+    private String geohash;
     private Date dateSignalement;
     private String statut;
     private String idUtilisateur;
@@ -36,13 +36,16 @@ public class Incident implements ClusterItem {
     // --- Champs Sociaux & Engagement ---
     private String auteurPhotoUrl;
     private int likesCount;
-    private List<String> likedBy;
     private int commentsCount;
 
     // --- Champs Dénormalisés (Performance UI) ---
     private String nomCategorie;
     private String nomUtilisateur;
 
+    // --- Synchronisation (rempli par le serveur à chaque écriture) ---
+    @ServerTimestamp
+    private Date updatedAt;
+
     /**
      * Constructeur vide requis pour la désérialisation Firebase Firestore.
      */
@@ -50,7 +53,6 @@ public class Incident implements ClusterItem {
         this.statut = STATUT_NOUVEAU;
         this.likesCount = 0;
         this.commentsCount = 0;
-        this.likedBy = new ArrayList<>();
     }
 
     /**
@@ -71,7 +73,6 @@ public class Incident implements ClusterItem {
 
         this.likesCount = 0;
         this.commentsCount = 0;
-        this.likedBy = new ArrayList<>();
     }
 
     // --- Getters et Setters ---
@@ -97,6 +98,9 @@ public class Incident implements ClusterItem {
     public double getLongitude() { return longitude; }
     public void setLongitude(double longitude) { this.longitude = longitude; }
 
+    public String getGeohash() { return geohash; }
+    public void setGeohash(String geohash) { this.geohash = geohash; }
+
     public Date getDateSignalement() { return dateSignalement; }
     public void setDateSignalement(Date dateSignalement) { this.dateSignalement = dateSignalement; }
 
@@ -121,8 +125,8 @@ public class Incident implements ClusterItem {
     public int getCommentsCount() { return commentsCount; }
     public void setCommentsCount(int commentsCount) { this.commentsCount = commentsCount; }
 
-    public List<String> getLikedBy() { return likedBy; }
-    public void setLikedBy(List<String> likedBy) { this.likedBy = likedBy; }
+    public Date getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Date updatedAt) { this.updatedAt = updatedAt; }
 
     // --- Méthodes Utilitaires (Exclues de Firestore) ---
 
@@ -136,15 +140,6 @@ public class Incident implements ClusterItem {
         return (photoUrl != null && !photoUrl.isEmpty()) || (videoUrl != null && !videoUrl.isEmpty());
     }
 
-    /**
-     * Vérifie si l'utilisateur a aimé cet incident.
-     * Sécurité ajoutée pour éviter les NullPointerException.
-     */
-    @Exclude
-    public boolean isLikedBy(String userId) {
-        return userId != null && likedBy != null && likedBy.contains(userId);
-    }
-
     // --- Implémentation de ClusterItem ---
 
     @Override
@@ -16,6 +16,7 @@ import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.bumptech.glide.signature.ObjectKey;
 import com.example.safecity.R;
 import com.example.safecity.model.Comment;
+import com.example.safecity.utils.KeyedSnapshotList;
 
 import java.util.List;
 
@@ -76,6 +77,14 @@ public class CommentAdapter extends RecyclerView.Adapter<CommentAdapter.CommentV
         notifyDataSetChanged();
     }
 
+    /**
+     * Applique uniquement les lignes modifiées par le dernier snapshot.
+     */
+    public void applyChanges(List<Comment> newList, List<KeyedSnapshotList.Change> changes) {
+        this.commentList = newList;
+        KeyedSnapshotList.dispatch(changes, this);
+    }
+
     static class CommentViewHolder extends RecyclerView.ViewHolder {
         ImageView imgProfile;
         TextView tvUsername, tvText, tvDate;
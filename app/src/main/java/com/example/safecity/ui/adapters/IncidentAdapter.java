@@ -12,6 +12,7 @@ import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
@@ -19,9 +20,10 @@ import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.bumptech.glide.signature.ObjectKey;
 import com.example.safecity.R;
 import com.example.safecity.model.Incident;
-import com.google.firebase.firestore.FieldValue;
-import com.google.firebase.firestore.FirebaseFirestore;
+import com.example.safecity.utils.LikeIndex;
+import com.example.safecity.utils.LikeManager;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -37,6 +39,11 @@ public class IncidentAdapter extends RecyclerView.Adapter<IncidentAdapter.Incide
     private String currentUserId;
     private String currentUserRole;
 
+    // Payload de rebind limité au cœur quand seul l'index des likes a changé
+    private static final Object PAYLOAD_LIKE = new Object();
+    private final LikeIndex.OnLikesChangedListener likesListener =
+            () -> notifyItemRangeChanged(0, getItemCount(), PAYLOAD_LIKE);
+
     public interface OnIncidentActionListener {
         void onMapClick(Incident incident);
         void onEditClick(Incident incident);
@@ -61,6 +68,18 @@ public class IncidentAdapter extends RecyclerView.Adapter<IncidentAdapter.Incide
         notifyDataSetChanged();
     }
 
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        LikeIndex.getInstance().addListener(likesListener);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        LikeIndex.getInstance().removeListener(likesListener);
+    }
+
     @NonNull
     @Override
     public IncidentViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -68,6 +87,15 @@ public class IncidentAdapter extends RecyclerView.Adapter<IncidentAdapter.Incide
         return new IncidentViewHolder(view);
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull IncidentViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_LIKE) && payloads.size() == 1) {
+            bindLikeState(holder, incidentList.get(position));
+            return;
+        }
+        super.onBindViewHolder(holder, position, payloads);
+    }
+
     @Override
     public void onBindViewHolder(@NonNull IncidentViewHolder holder, int position) {
         Incident incident = incidentList.get(position);
@@ -136,44 +164,30 @@ public class IncidentAdapter extends RecyclerView.Adapter<IncidentAdapter.Incide
         holder.btnValidate.setOnClickListener(v -> { if (actionListener != null) actionListener.onValidateClick(incident); });
 
         // --- 6. ACTIONS SOCIALES ---
-        holder.tvLikesCount.setText(String.valueOf(incident.getLikesCount()));
         holder.tvCommentsCount.setText(String.valueOf(incident.getCommentsCount()));
-
-        if (currentUserId != null && incident.isLikedBy(currentUserId)) {
-            holder.btnLike.setColorFilter(ContextCompat.getColor(context, android.R.color.holo_red_light));
-        } else {
-            holder.btnLike.setColorFilter(ContextCompat.getColor(context, android.R.color.darker_gray));
-        }
+        bindLikeState(holder, incident);
 
         holder.btnLike.setOnClickListener(v -> toggleLike(incident, holder));
         holder.btnComment.setOnClickListener(v -> { if (actionListener != null) actionListener.onCommentClick(incident); });
         holder.btnMap.setOnClickListener(v -> { if (actionListener != null) actionListener.onMapClick(incident); });
     }
 
+    private void bindLikeState(IncidentViewHolder holder, Incident incident) {
+        boolean liked = currentUserId != null && LikeIndex.getInstance().isLiked(incident.getId());
+        int color = liked ? android.R.color.holo_red_light : android.R.color.darker_gray;
+        holder.btnLike.setColorFilter(ContextCompat.getColor(context, color));
+        holder.tvLikesCount.setText(String.valueOf(LikeIndex.getInstance().getDisplayedLikesCount(incident)));
+    }
+
     private void toggleLike(Incident incident, IncidentViewHolder holder) {
         if (currentUserId == null) {
             Toast.makeText(context, "Connectez-vous pour aimer.", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        FirebaseFirestore db = FirebaseFirestore.getInstance();
-        boolean isLiked = incident.isLikedBy(currentUserId);
-
-        if (isLiked) {
-            incident.getLikedBy().remove(currentUserId);
-            incident.setLikesCount(Math.max(0, incident.getLikesCount() - 1));
-            holder.btnLike.setColorFilter(ContextCompat.getColor(context, android.R.color.darker_gray));
-        } else {
-            incident.getLikedBy().add(currentUserId);
-            incident.setLikesCount(incident.getLikesCount() + 1);
-            holder.btnLike.setColorFilter(ContextCompat.getColor(context, android.R.color.holo_red_light));
-        }
-        holder.tvLikesCount.setText(String.valueOf(incident.getLikesCount()));
-
-        db.collection("incidents").document(incident.getId())
-                .update("likesCount", FieldValue.increment(isLiked ? -1 : 1),
-                        "likedBy", isLiked ? FieldValue.arrayRemove(currentUserId) : FieldValue.arrayUnion(currentUserId))
-                .addOnFailureListener(e -> notifyDataSetChanged());
+        // Affichage optimiste ; l'écriture est regroupée et retardée par LikeManager
+        LikeManager.getInstance().toggle(incident);
+        bindLikeState(holder, incident);
     }
 
     @Override
@@ -181,9 +195,35 @@ public class IncidentAdapter extends RecyclerView.Adapter<IncidentAdapter.Incide
         return incidentList != null ? incidentList.size() : 0;
     }
 
+    public Incident getItem(int position) {
+        return incidentList.get(position);
+    }
+
+    /**
+     * Met à jour la liste en ne rafraîchissant que les lignes réellement modifiées.
+     * Le dépôt conserve la même instance pour un incident inchangé : la comparaison
+     * du contenu se réduit donc à une comparaison d'identité.
+     */
     public void updateData(List<Incident> newList) {
-        this.incidentList = newList;
-        notifyDataSetChanged();
+        final List<Incident> oldList = incidentList != null ? incidentList : Collections.emptyList();
+        final List<Incident> target = newList != null ? newList : Collections.emptyList();
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override public int getOldListSize() { return oldList.size(); }
+            @Override public int getNewListSize() { return target.size(); }
+
+            @Override
+            public boolean areItemsTheSame(int oldPos, int newPos) {
+                String oldId = oldList.get(oldPos).getId();
+                return oldId != null && oldId.equals(target.get(newPos).getId());
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPos, int newPos) {
+                return oldList.get(oldPos) == target.get(newPos);
+            }
+        });
+        this.incidentList = target;
+        diff.dispatchUpdatesTo(this);
     }
 
     static class IncidentViewHolder extends RecyclerView.ViewHolder {
@@ -14,6 +14,7 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.safecity.R;
 import com.example.safecity.model.NotificationApp;
+import com.example.safecity.utils.KeyedSnapshotList;
 
 import java.util.List;
 
@@ -38,6 +39,11 @@ public class NotificationAdapter extends RecyclerView.Adapter<NotificationAdapte
         notifyDataSetChanged();
     }
 
+    public void applyChanges(List<NotificationApp> newList, List<KeyedSnapshotList.Change> changes) {
+        this.notifList = newList;
+        KeyedSnapshotList.dispatch(changes, this);
+    }
+
     @NonNull
     @Override
     public NotifViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
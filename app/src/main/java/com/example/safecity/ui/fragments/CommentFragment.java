@@ -18,14 +18,16 @@ import com.example.safecity.R;
 import com.example.safecity.model.Comment;
 import com.example.safecity.model.Utilisateur;
 import com.example.safecity.ui.adapters.CommentAdapter;
+import com.example.safecity.utils.CommentWindow;
 import com.example.safecity.utils.FirestoreRepository;
+import com.example.safecity.utils.KeyedSnapshotList;
+import com.example.safecity.utils.SyncEngine;
 import com.google.android.material.bottomsheet.BottomSheetBehavior;
 import com.google.android.material.bottomsheet.BottomSheetDialog;
 import com.google.android.material.bottomsheet.BottomSheetDialogFragment;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.firestore.ListenerRegistration;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -46,7 +48,8 @@ public class CommentFragment extends BottomSheetDialogFragment {
     private TextView tvEmpty;
 
     private FirestoreRepository repo;
-    private ListenerRegistration listenerRegistration;
+    private CommentWindow commentWindow;
+    private boolean liveCommentsLoaded = false;
     private Utilisateur currentUserData;
 
     /**
@@ -92,11 +95,22 @@ public class CommentFragment extends BottomSheetDialogFragment {
         tvEmpty = view.findViewById(R.id.tv_no_comments);
 
         // Configuration de la liste
-        recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
+        recyclerView.setLayoutManager(layoutManager);
         adapter = new CommentAdapter(getContext(), new ArrayList<>());
         recyclerView.setAdapter(adapter);
 
-        repo = new FirestoreRepository();
+        // Les commentaires plus anciens se chargent quand on remonte vers le haut de la liste
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
+                if (dy < 0 && commentWindow != null) {
+                    commentWindow.onScrollPositionChanged(layoutManager.findFirstVisibleItemPosition());
+                }
+            }
+        });
+
+        repo = new FirestoreRepository("comments");
 
         if (getArguments() != null) {
             incidentId = getArguments().getString(ARG_INCIDENT_ID);
@@ -132,37 +146,66 @@ public class CommentFragment extends BottomSheetDialogFragment {
     }
 
     /**
-     * Écoute en temps réel les nouveaux commentaires sur Firestore.
+     * Écoute en temps réel la page de commentaires la plus récente ; les anciennes pages
+     * sont chargées en remontant (CommentWindow).
      */
     private void startListeningComments() {
         if (incidentId == null) return;
+        SyncEngine sync = SyncEngine.getInstance(requireContext());
 
-        listenerRegistration = repo.getCommentsRealtime(incidentId, new FirestoreRepository.OnCommentsLoadedListener() {
+        // Derniers commentaires connus, affichés en attendant (ou à défaut) la réponse de Firestore
+        sync.loadComments(incidentId, new FirestoreRepository.OnListChangedListener<Comment>() {
             @Override
-            public void onCommentsLoaded(List<Comment> comments) {
-                if (!isAdded()) return;
+            public void onListChanged(List<Comment> comments, List<KeyedSnapshotList.Change> changes) {
+                if (!isAdded() || liveCommentsLoaded || comments.isEmpty()) return;
+                showComments(comments, null);
+            }
+            @Override
+            public void onError(Exception e) {}
+        });
 
-                // Mise à jour de l'adapter avant de changer la visibilité pour éviter les sauts visuels
-                adapter.updateData(comments != null ? comments : new ArrayList<>());
-
-                if (comments != null && !comments.isEmpty()) {
-                    tvEmpty.setVisibility(View.GONE);
-                    recyclerView.setVisibility(View.VISIBLE);
-                    // Scroll automatique pour voir le dernier message
-                    recyclerView.smoothScrollToPosition(comments.size() - 1);
-                } else {
-                    tvEmpty.setVisibility(View.VISIBLE);
-                    recyclerView.setVisibility(View.GONE);
-                }
+        commentWindow = new CommentWindow(repo, incidentId, new CommentWindow.OnWindowChangedListener() {
+            @Override
+            public void onWindowChanged(List<Comment> comments, List<KeyedSnapshotList.Change> changes) {
+                if (!isAdded()) return;
+                liveCommentsLoaded = true;
+                showComments(comments, changes);
+                sync.saveComments(incidentId, commentWindow.getHead());
             }
 
             @Override
             public void onError(Exception e) {
-                if (isAdded()) {
+                if (isAdded() && adapter.getItemCount() == 0) {
                     Toast.makeText(getContext(), "Impossible de charger les messages", Toast.LENGTH_SHORT).show();
                 }
             }
         });
+        commentWindow.start();
+    }
+
+    private void showComments(List<Comment> comments, List<KeyedSnapshotList.Change> changes) {
+        // Mise à jour de l'adapter avant de changer la visibilité pour éviter les sauts visuels
+        adapter.applyChanges(comments, changes);
+
+        if (!comments.isEmpty()) {
+            tvEmpty.setVisibility(View.GONE);
+            recyclerView.setVisibility(View.VISIBLE);
+            // Scroll automatique seulement si un message arrive en fin de liste
+            if (hasInsertionAtEnd(changes, comments.size())) {
+                recyclerView.smoothScrollToPosition(comments.size() - 1);
+            }
+        } else {
+            tvEmpty.setVisibility(View.VISIBLE);
+            recyclerView.setVisibility(View.GONE);
+        }
+    }
+
+    private boolean hasInsertionAtEnd(List<KeyedSnapshotList.Change> changes, int size) {
+        if (changes == null) return true;
+        for (KeyedSnapshotList.Change c : changes) {
+            if (c.type == KeyedSnapshotList.Change.INSERTED && c.newIndex == size - 1) return true;
+        }
+        return false;
     }
 
     private void postComment() {
@@ -208,8 +251,8 @@ public class CommentFragment extends BottomSheetDialogFragment {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
-        if (listenerRegistration != null) {
-            listenerRegistration.remove();
+        if (commentWindow != null) {
+            commentWindow.stop();
         }
     }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.example.safecity.ui.fragments;
 
 import android.app.Dialog;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -30,31 +31,45 @@ import com.example.safecity.model.Incident;
 import com.example.safecity.model.NotificationApp;
 import com.example.safecity.model.Utilisateur;
 import com.example.safecity.ui.adapters.IncidentAdapter;
+import com.example.safecity.utils.AppExecutors;
 import com.example.safecity.utils.FirestoreRepository;
+import com.example.safecity.utils.IncidentFeedPager;
+import com.example.safecity.utils.IncidentFilterIndex;
+import com.example.safecity.utils.RepositoryMetrics;
+import com.example.safecity.utils.SyncEngine;
 import com.google.android.material.chip.ChipGroup;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.firestore.ListenerRegistration;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 public class HomeFragment extends Fragment implements IncidentAdapter.OnIncidentActionListener {
 
     private RecyclerView recyclerView;
     private View layoutEmptyState;
     private IncidentAdapter adapter;
+    private LinearLayoutManager layoutManager;
     private FirestoreRepository firestoreRepo;
-    private ListenerRegistration firestoreListener;
+    private IncidentFeedPager feedPager;
+    private boolean liveFeedLoaded = false;
 
     private ChipGroup chipGroup;
     private FloatingActionButton fabStats;
     private List<Incident> allIncidents = new ArrayList<>();
 
+    // Filtrage hors thread UI ; seul le dernier calcul lancé est appliqué
+    private final Executor filterExecutor = AppExecutors.getInstance().newSerialExecutor();
+    private int filterGeneration = 0;
+    // Index par catégorie, réservé à filterExecutor ; mis à jour seulement quand la liste change
+    private final IncidentFilterIndex filterIndex = new IncidentFilterIndex();
+    private List<Incident> indexedSource;
+
     private String searchQuery = null;
     private String focusIncidentId = null;
     private String myUserId;
@@ -85,12 +100,26 @@ public class HomeFragment extends Fragment implements IncidentAdapter.OnIncident
         chipGroup = view.findViewById(R.id.chip_group_filters_home);
         fabStats = requireActivity().findViewById(R.id.fab_stats);
 
-        recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
-        firestoreRepo = new FirestoreRepository();
+        layoutManager = new LinearLayoutManager(getContext());
+        recyclerView.setLayoutManager(layoutManager);
+        firestoreRepo = new FirestoreRepository("home");
 
         adapter = new IncidentAdapter(getContext(), new ArrayList<>(), this);
         recyclerView.setAdapter(adapter);
 
+        // Chargement des pages plus anciennes à l'approche de la fin de la liste
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
+                int count = adapter.getItemCount();
+                int first = layoutManager.findFirstVisibleItemPosition();
+                int last = layoutManager.findLastVisibleItemPosition();
+                if (feedPager == null || first < 0 || last < 0 || last >= count) return;
+                // La liste peut être filtrée : le pager retrouve la position des incidents dans le fil complet
+                feedPager.onScrollPositionChanged(adapter.getItem(first), adapter.getItem(last), last == count - 1);
+            }
+        });
+
         FirebaseUser fbUser = FirebaseAuth.getInstance().getCurrentUser();
         if (fbUser != null) {
             myUserId = fbUser.getUid();
@@ -135,9 +164,9 @@ public class HomeFragment extends Fragment implements IncidentAdapter.OnIncident
     @Override
     public void onStop() {
         super.onStop();
-        if (firestoreListener != null) {
-            firestoreListener.remove();
-            firestoreListener = null;
+        if (feedPager != null) {
+            feedPager.stop();
+            feedPager = null;
         }
     }
 
@@ -157,55 +186,110 @@ public class HomeFragment extends Fragment implements IncidentAdapter.OnIncident
                 }
             });
         } else {
-            firestoreListener = firestoreRepo.getIncidentsRealtime(new FirestoreRepository.OnDataLoadListener() {
+            final IncidentFeedPager pager = new IncidentFeedPager(firestoreRepo, new IncidentFeedPager.OnFeedChangedListener() {
                 @Override
-                public void onIncidentsLoaded(List<Incident> incidents) {
+                public void onFeedChanged(List<Incident> incidents) {
                     if (!isAdded() || getActivity() == null) return;
+                    liveFeedLoaded = true;
                     allIncidents = incidents != null ? incidents : new ArrayList<>();
                     applyFilters(searchQuery);
                 }
 
                 @Override
                 public void onError(Exception e) {
-                    if (isAdded()) Toast.makeText(getContext(), "Erreur : " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                    if (!isAdded()) return;
+                    // Hors ligne : la copie locale reste affichée
+                    String message = allIncidents.isEmpty() ? "Erreur : " + e.getMessage()
+                            : "Hors ligne : affichage des derniers signalements enregistrés";
+                    Toast.makeText(getContext(), message, Toast.LENGTH_SHORT).show();
                 }
             });
+            feedPager = pager;
+            liveFeedLoaded = false;
+
+            // Affichage immédiat depuis la base locale, remplacé dès la première réponse de Firestore
+            SyncEngine.getInstance(requireContext()).loadRecentIncidents(FirestoreRepository.LIVE_INCIDENTS_LIMIT,
+                    new FirestoreRepository.OnDataLoadListener() {
+                @Override
+                public void onIncidentsLoaded(List<Incident> incidents) {
+                    if (!isAdded() || feedPager != pager || liveFeedLoaded || incidents.isEmpty()) return;
+                    allIncidents = incidents;
+                    applyFilters(searchQuery);
+                }
+                @Override
+                public void onError(Exception e) {}
+            });
+            pager.start();
         }
     }
 
     private void applyFilters(String queryText) {
-        List<Incident> filteredList = new ArrayList<>();
-        if (focusIncidentId != null) {
-            filteredList.addAll(allIncidents);
-            chipGroup.setVisibility(View.GONE);
-        } else {
-            String queryLower = (queryText != null) ? queryText.toLowerCase() : null;
-            String categoryFilter = getCategoryFilter();
-
-            for (Incident i : allIncidents) {
-                boolean matchesSearch = true;
-                boolean matchesCategory = true;
-
-                if (queryLower != null && !queryLower.isEmpty()) {
-                    matchesSearch = (i.getDescription() != null && i.getDescription().toLowerCase().contains(queryLower)) ||
-                                  (i.getNomCategorie() != null && i.getNomCategorie().toLowerCase().contains(queryLower));
-                }
+        final List<Incident> source = allIncidents;
+        final boolean focusMode = focusIncidentId != null;
+        final String queryLower = (queryText != null) ? queryText.toLowerCase() : null;
+        final String categoryFilter = getCategoryFilter();
+        final int generation = ++filterGeneration;
+
+        if (focusMode) chipGroup.setVisibility(View.GONE);
+
+        filterExecutor.execute(() -> {
+            List<Incident> filteredList = focusMode ? new ArrayList<>(source) : filter(source, queryLower, categoryFilter);
+            AppExecutors.getInstance().mainThread().execute(() -> {
+                if (!isAdded() || generation != filterGeneration) return;
+                updateListKeepingAnchor(filteredList);
+
+                boolean isEmpty = filteredList.isEmpty();
+                layoutEmptyState.setVisibility(isEmpty ? View.VISIBLE : View.GONE);
+                recyclerView.setVisibility(isEmpty ? View.GONE : View.VISIBLE);
+            });
+        });
+    }
 
-                if (categoryFilter != null) {
-                    matchesCategory = (i.getNomCategorie() != null && i.getNomCategorie().equalsIgnoreCase(categoryFilter));
-                }
+    /**
+     * Catégorie par intersection dans l'index, puis recherche textuelle sur ce seul sous-ensemble.
+     * Appelé sur filterExecutor.
+     */
+    private List<Incident> filter(List<Incident> source, String queryLower, String categoryFilter) {
+        if (source != indexedSource) {
+            filterIndex.update(source);
+            indexedSource = source;
+        }
+        List<Incident> byCategory = filterIndex.query(null, categoryFilter, false);
+        if (queryLower == null || queryLower.isEmpty()) return byCategory;
 
-                if (matchesSearch && matchesCategory) {
-                    filteredList.add(i);
-                }
+        List<Incident> filteredList = new ArrayList<>();
+        for (Incident i : byCategory) {
+            if ((i.getDescription() != null && i.getDescription().toLowerCase().contains(queryLower)) ||
+                    (i.getNomCategorie() != null && i.getNomCategorie().toLowerCase().contains(queryLower))) {
+                filteredList.add(i);
             }
         }
+        return filteredList;
+    }
+
+    /**
+     * Met à jour la liste en gardant l'élément visible en haut à sa place,
+     * même si des pages ont été ajoutées ou évincées au-dessus de lui.
+     */
+    private void updateListKeepingAnchor(List<Incident> newList) {
+        int firstVisible = layoutManager.findFirstVisibleItemPosition();
+        String anchorId = null;
+        int anchorOffset = 0;
+        if (firstVisible > 0 && firstVisible < adapter.getItemCount()) {
+            anchorId = adapter.getItem(firstVisible).getId();
+            View anchorView = layoutManager.findViewByPosition(firstVisible);
+            if (anchorView != null) anchorOffset = anchorView.getTop();
+        }
 
-        adapter.updateData(filteredList);
+        adapter.updateData(newList);
 
-        boolean isEmpty = filteredList.isEmpty();
-        layoutEmptyState.setVisibility(isEmpty ? View.VISIBLE : View.GONE);
-        recyclerView.setVisibility(isEmpty ? View.GONE : View.VISIBLE);
+        if (anchorId == null) return;
+        for (int i = 0; i < newList.size(); i++) {
+            if (anchorId.equals(newList.get(i).getId())) {
+                if (i != firstVisible) layoutManager.scrollToPositionWithOffset(i, anchorOffset);
+                return;
+            }
+        }
     }
 
     private String getCategoryFilter() {
@@ -220,16 +304,33 @@ public class HomeFragment extends Fragment implements IncidentAdapter.OnIncident
 
     private void showAdminMenu() {
         if (getContext() == null) return;
-        String[] options = {"📊 Voir Tableau de Bord", "📢 Diffuser Alerte Officielle"};
+        String[] options = {"📊 Voir Tableau de Bord", "📢 Diffuser Alerte Officielle", "🔍 Coût Firestore (debug)"};
         new MaterialAlertDialogBuilder(requireContext())
                 .setTitle("Administration")
                 .setItems(options, (dialog, which) -> {
                     if (which == 0) showStatisticsDialog();
-                    else showSendAlertDialog();
+                    else if (which == 1) showSendAlertDialog();
+                    else showRepositoryMetricsDialog();
                 })
                 .show();
     }
 
+    /**
+     * Lectures, écritures et latences Firestore par écran depuis le lancement (RepositoryMetrics).
+     * Le rapport est aussi écrit dans logcat pour être copié.
+     */
+    private void showRepositoryMetricsDialog() {
+        if (getContext() == null) return;
+        String report = RepositoryMetrics.getInstance().dump();
+        Log.d("RepositoryMetrics", report);
+        new MaterialAlertDialogBuilder(requireContext())
+                .setTitle("🔍 Coût Firestore")
+                .setMessage(report)
+                .setPositiveButton("Fermer", null)
+                .setNeutralButton("Remettre à zéro", (dialog, which) -> RepositoryMetrics.getInstance().reset())
+                .show();
+    }
+
     private void showSendAlertDialog() {
         if (getContext() == null) return;
         View dialogView = LayoutInflater.from(getContext()).inflate(R.layout.dialog_send_alert, null);
@@ -330,9 +431,13 @@ public class HomeFragment extends Fragment implements IncidentAdapter.OnIncident
     public void onDeleteClick(Incident incident) {
         new MaterialAlertDialogBuilder(requireContext())
                 .setTitle("Supprimer ?")
-                .setPositiveButton("Oui", (d, w) -> firestoreRepo.deleteIncident(incident.getId(), incident.getPhotoUrl(), new FirestoreRepository.OnFirestoreTaskComplete() {
+                .setPositiveButton("Oui", (d, w) -> firestoreRepo.deleteIncident(incident.getId(), new FirestoreRepository.OnFirestoreTaskComplete() {
                     @Override
-                    public void onSuccess() { if(isAdded()) Toast.makeText(getContext(), "Supprimé.", Toast.LENGTH_SHORT).show(); }
+                    public void onSuccess() {
+                        if (!isAdded()) return;
+                        SyncEngine.getInstance(requireContext()).removeIncident(incident.getId());
+                        Toast.makeText(getContext(), "Supprimé.", Toast.LENGTH_SHORT).show();
+                    }
                     @Override
                     public void onError(Exception e) { if(isAdded()) Toast.makeText(getContext(), "Erreur de suppression.", Toast.LENGTH_SHORT).show(); }
                 }))
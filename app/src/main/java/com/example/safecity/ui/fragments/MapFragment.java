@@ -18,18 +18,28 @@ import androidx.annotation.Nullable;
 import androidx.appcompat.widget.SearchView;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.Lifecycle;
 
 import com.bumptech.glide.Glide;
 import com.example.safecity.R;
 import com.example.safecity.model.Incident;
 import com.example.safecity.utils.AppExecutors;
+import com.example.safecity.utils.ClusterItemDiffer;
 import com.example.safecity.utils.FirestoreRepository;
+import com.example.safecity.utils.GridClusteringAlgorithm;
+import com.example.safecity.utils.HeatmapLayerController;
+import com.example.safecity.utils.IncidentClusterRenderer;
+import com.example.safecity.utils.IncidentFilterIndex;
+import com.example.safecity.utils.LikeIndex;
+import com.example.safecity.utils.LikeManager;
 import com.example.safecity.utils.LocationHelper;
+import com.example.safecity.utils.SyncEngine;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.material.bottomsheet.BottomSheetDialog;
 import com.google.android.material.chip.Chip;
 import com.google.android.material.chip.ChipGroup;
@@ -40,8 +50,11 @@ import com.google.maps.android.clustering.ClusterManager;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 /**
  * Fragment fusionné gérant la cartographie interactive de SafeCity.
@@ -53,12 +66,40 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
     private FirestoreRepository firestoreRepo;
     private ClusterManager<Incident> clusterManager;
     private LocationHelper locationHelper;
+    private ListenerRegistration incidentsRegistration;
+
+    // Sous ce zoom, la zone visible est trop large : seuls les incidents récents sont affichés
+    private static final float MIN_VIEWPORT_ZOOM = 11f;
+    // Marge ajoutée autour de la zone visible, pour qu'un petit déplacement ne relance pas de requête
+    private static final double VIEWPORT_PADDING_RATIO = 0.25;
+    // Incidents lus dans la base locale pour la vue d'ensemble : tout ce que SyncEngine a rapatrié
+    // (SyncEngine.INITIAL_WINDOW_MS au premier lancement, puis chaque synchronisation), borné ici
+    private static final int OVERVIEW_LOCAL_LIMIT = 20000;
 
     // Données et État des filtres
     private List<Incident> allIncidents = new ArrayList<>();
+    // Incidents de la zone visible (requête geohash), fusionnés avec la tête temps réel
+    private List<Incident> viewportIncidents = new ArrayList<>();
+    private LatLngBounds loadedBounds;
+    private int viewportGeneration = 0;
     private String selectedCategory = "Tous";
     private boolean isShowingTraite = false; // Bascule entre Nouveau et Traité
 
+    // Niveau de détail : heatmap aux petits zooms (incidents de la base locale), groupes au-delà
+    private HeatmapLayerController heatmap;
+    private boolean heatmapMode = false;
+    private List<Incident> overviewIncidents = new ArrayList<>();
+    private boolean overviewRequested = false;
+
+    // Filtrage et diff hors thread UI ; un calcul dépassé par un plus récent est sauté avant de commencer
+    private final Executor filterExecutor = AppExecutors.getInstance().newSerialExecutor();
+    private volatile int filterGeneration = 0;
+    private final ClusterItemDiffer clusterDiffer = new ClusterItemDiffer();
+    // Index statut × catégorie, réservé à filterExecutor ; reconstruit seulement quand les données changent
+    private final IncidentFilterIndex filterIndex = new IncidentFilterIndex();
+    private List<Incident> indexedLive;
+    private List<Incident> indexedExtra;
+
     // Focus de navigation (si ouvert depuis une notification ou liste)
     private Double targetLat = null;
     private Double targetLng = null;
@@ -83,7 +124,7 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
-        firestoreRepo = new FirestoreRepository();
+        firestoreRepo = new FirestoreRepository("map");
         locationHelper = new LocationHelper(requireContext());
 
         chipGroupCategories = view.findViewById(R.id.chip_group_filters);
@@ -160,49 +201,168 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         googleMap.getUiSettings().setMyLocationButtonEnabled(false);
 
         clusterManager = new ClusterManager<>(getContext(), googleMap);
-        googleMap.setOnCameraIdleListener(clusterManager);
+        clusterManager.setAlgorithm(new GridClusteringAlgorithm<>());
+        clusterManager.setRenderer(new IncidentClusterRenderer(requireContext(), googleMap, clusterManager));
+        clusterDiffer.reset();
+        heatmap = new HeatmapLayerController(googleMap);
+        googleMap.setOnCameraIdleListener(() -> {
+            clusterManager.onCameraIdle();
+            updateDetailMode();
+            loadViewportIncidents();
+        });
         googleMap.setOnMarkerClickListener(clusterManager);
 
         clusterManager.setOnClusterItemClickListener(incident -> {
-            showIncidentBottomSheet(incident);
+            showIncidentBottomSheet(clusterDiffer.latest(incident));
             return true;
         });
 
         enableUserLocation();
         loadIncidentMarkers();
+        // Le nouveau ClusterManager est vide : on y replace les incidents déjà connus
+        applyCombinedFilters();
     }
 
     /**
      * Applique les filtres de Statut ET de Catégorie simultanément.
+     * Seules les différences avec les marqueurs déjà affichés sont transmises au ClusterManager.
+     * En vue d'ensemble, le résultat alimente la heatmap et les marqueurs sont retirés.
      */
     private void applyCombinedFilters() {
         if (allIncidents == null || clusterManager == null) return;
 
-        List<Incident> filteredList = new ArrayList<>();
-        String targetStatus = isShowingTraite ? Incident.STATUT_TRAITE : Incident.STATUT_NOUVEAU;
+        final List<Incident> live = allIncidents;
+        final boolean overview = heatmapMode;
+        final List<Incident> extra = overview ? overviewIncidents : viewportIncidents;
+        final String targetStatus = isShowingTraite ? Incident.STATUT_TRAITE : Incident.STATUT_NOUVEAU;
+        final String category = selectedCategory;
+        final int generation = ++filterGeneration;
+
+        filterExecutor.execute(() -> {
+            if (generation != filterGeneration) return;
+            if (live != indexedLive || extra != indexedExtra) {
+                filterIndex.update(merge(live, extra));
+                indexedLive = live;
+                indexedExtra = extra;
+            }
+            String categoryFilter = category.equals("Tous") ? null : category;
+            List<Incident> filteredList = filterIndex.query(targetStatus, categoryFilter, true);
+
+            // Chaque diff calculé est appliqué, dans l'ordre : il part de l'état laissé par le précédent
+            ClusterItemDiffer.Diff diff = clusterDiffer.diff(overview ? new ArrayList<>() : filteredList);
+            AppExecutors.getInstance().mainThread().execute(() -> {
+                if (!isAdded() || clusterManager == null) return;
+                clusterDiffer.apply(diff, clusterManager);
+                if (generation != filterGeneration) return;
+                if (overview) heatmap.show(filteredList);
+                else if (heatmap.isVisible()) heatmap.hide();
+            });
+        });
+    }
 
-        for (Incident inc : allIncidents) {
-            // Vérification du Statut
-            boolean statusMatches = inc.getStatut() != null && inc.getStatut().equalsIgnoreCase(targetStatus);
+    /**
+     * Bascule entre heatmap et groupes de marqueurs selon le zoom.
+     * La vue d'ensemble lit une fois les incidents de la base locale, sans requête Firestore.
+     */
+    private void updateDetailMode() {
+        boolean overview = HeatmapLayerController.isHeatmapZoom(googleMap.getCameraPosition().zoom);
+        if (overview == heatmapMode) return;
+        heatmapMode = overview;
+        if (overview && !overviewRequested) {
+            overviewRequested = true;
+            SyncEngine.getInstance(requireContext()).loadRecentIncidents(OVERVIEW_LOCAL_LIMIT,
+                    new FirestoreRepository.OnDataLoadListener() {
+                @Override
+                public void onIncidentsLoaded(List<Incident> incidents) {
+                    if (!isAdded()) return;
+                    overviewIncidents = incidents;
+                    if (heatmapMode) applyCombinedFilters();
+                }
+                @Override
+                public void onError(Exception e) {
+                    overviewRequested = false;
+                }
+            });
+        }
+        applyCombinedFilters();
+    }
 
-            // Vérification de la Catégorie
-            boolean categoryMatches = selectedCategory.equals("Tous") ||
-                    (inc.getNomCategorie() != null && inc.getNomCategorie().equalsIgnoreCase(selectedCategory));
+    /**
+     * Tête temps réel d'abord (plus fraîche), puis les incidents de la zone visible absents de la tête.
+     */
+    private static List<Incident> merge(List<Incident> live, List<Incident> viewport) {
+        if (viewport.isEmpty()) return live;
+        List<Incident> merged = new ArrayList<>(live.size() + viewport.size());
+        Set<String> seen = new HashSet<>();
+        for (Incident inc : live) {
+            if (seen.add(inc.getId())) merged.add(inc);
+        }
+        for (Incident inc : viewport) {
+            if (seen.add(inc.getId())) merged.add(inc);
+        }
+        return merged;
+    }
 
-            if (statusMatches && categoryMatches) {
-                if (Math.abs(inc.getLatitude()) > 0.001) {
-                    filteredList.add(inc);
-                }
-            }
+    /**
+     * Charge tous les incidents de la zone visible via les plages de geohash,
+     * sauf si la zone est déjà couverte par le dernier chargement ou trop large.
+     */
+    private void loadViewportIncidents() {
+        if (googleMap == null || !isAdded()) return;
+        if (googleMap.getCameraPosition().zoom < MIN_VIEWPORT_ZOOM) return;
+
+        LatLngBounds visible = googleMap.getProjection().getVisibleRegion().latLngBounds;
+        if (loadedBounds != null && loadedBounds.contains(visible.southwest) && loadedBounds.contains(visible.northeast)) {
+            return;
         }
 
-        clusterManager.clearItems();
-        clusterManager.addItems(filteredList);
-        clusterManager.cluster();
+        final LatLngBounds target = pad(visible);
+        final int generation = ++viewportGeneration;
+        firestoreRepo.getIncidentsInBounds(target, new FirestoreRepository.OnDataLoadListener() {
+            @Override
+            public void onIncidentsLoaded(List<Incident> incidents) {
+                if (!isAdded() || generation != viewportGeneration) return;
+                viewportIncidents = incidents;
+                loadedBounds = target;
+                applyCombinedFilters();
+            }
+            @Override
+            public void onError(Exception e) {}
+        });
+    }
+
+    private static LatLngBounds pad(LatLngBounds bounds) {
+        double dLat = (bounds.northeast.latitude - bounds.southwest.latitude) * VIEWPORT_PADDING_RATIO;
+        double dLng = (bounds.northeast.longitude - bounds.southwest.longitude) * VIEWPORT_PADDING_RATIO;
+        // Zone à cheval sur l'antiméridien : pas de marge, pour ne pas inverser les bornes
+        if (dLng < 0) return bounds;
+        return new LatLngBounds(
+                new LatLng(Math.max(-90, bounds.southwest.latitude - dLat), Math.max(-180, bounds.southwest.longitude - dLng)),
+                new LatLng(Math.min(90, bounds.northeast.latitude + dLat), Math.min(180, bounds.northeast.longitude + dLng)));
     }
 
+    /**
+     * S'abonne aux incidents récents (écoute partagée avec le fil d'accueil).
+     * L'abonnement est retiré dans onStop pour ne pas s'accumuler entre les onglets.
+     */
     private void loadIncidentMarkers() {
-        firestoreRepo.getIncidentsRealtime(new FirestoreRepository.OnDataLoadListener() {
+        if (incidentsRegistration != null || googleMap == null) return;
+        if (!getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED)) return;
+        // Marqueurs connus localement, affichés jusqu'à la première réponse de Firestore
+        if (allIncidents.isEmpty()) {
+            SyncEngine.getInstance(requireContext()).loadRecentIncidents(FirestoreRepository.LIVE_INCIDENTS_LIMIT,
+                    new FirestoreRepository.OnDataLoadListener() {
+                @Override
+                public void onIncidentsLoaded(List<Incident> incidents) {
+                    if (!isAdded() || !allIncidents.isEmpty()) return;
+                    allIncidents = incidents;
+                    applyCombinedFilters();
+                }
+                @Override
+                public void onError(Exception e) {}
+            });
+        }
+        incidentsRegistration = firestoreRepo.getIncidentsRealtime(new FirestoreRepository.OnDataLoadListener() {
             @Override
             public void onIncidentsLoaded(List<Incident> incidents) {
                 if (!isAdded()) return;
@@ -266,20 +426,25 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
                 .placeholder(R.drawable.ic_profile).into(imgProfile);
 
         // --- ECOUTEUR TEMPS RÉEL (Likes/Comments/Heart) ---
+        LikeIndex.OnLikesChangedListener heartListener = () -> {
+            if (imgHeart != null && isAdded()) {
+                int heartColor = LikeIndex.getInstance().isLiked(incident.getId())
+                        ? android.R.color.holo_red_dark : android.R.color.black;
+                imgHeart.setColorFilter(ContextCompat.getColor(requireContext(), heartColor));
+            }
+        };
+        heartListener.onLikesChanged();
+        LikeIndex.getInstance().addListener(heartListener);
+
+        // Dernière version reçue, sur laquelle s'applique l'affichage optimiste du like
+        final Incident[] latest = { incident };
         ListenerRegistration sheetListener = firestoreRepo.getIncidentListener(incident.getId(), new FirestoreRepository.OnIncidentLoadedListener() {
             @Override
             public void onIncidentLoaded(Incident updatedIncident) {
                 if (updatedIncident != null && isAdded()) {
-                    String myUid = FirebaseAuth.getInstance().getUid();
-                    boolean isLikedByMe = updatedIncident.isLikedBy(myUid);
-
-                    // Couleur du cœur
-                    if (imgHeart != null) {
-                        int heartColor = isLikedByMe ? android.R.color.holo_red_dark : android.R.color.black;
-                        imgHeart.setColorFilter(ContextCompat.getColor(requireContext(), heartColor));
-                    }
+                    latest[0] = updatedIncident;
                     // Compteurs
-                    if (tvLikes != null) tvLikes.setText(updatedIncident.getLikesCount() + " J'aime");
+                    if (tvLikes != null) tvLikes.setText(LikeIndex.getInstance().getDisplayedLikesCount(updatedIncident) + " J'aime");
                     if (tvComments != null) tvComments.setText(updatedIncident.getCommentsCount() + " comm.");
                 }
             }
@@ -289,8 +454,9 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         // Action Like
         if (imgHeart != null) {
             imgHeart.setOnClickListener(v -> {
-                String myUid = FirebaseAuth.getInstance().getUid();
-                if (myUid != null) firestoreRepo.toggleLike(incident.getId(), myUid);
+                if (FirebaseAuth.getInstance().getUid() == null) return;
+                LikeManager.getInstance().toggle(latest[0]);
+                if (tvLikes != null) tvLikes.setText(LikeIndex.getInstance().getDisplayedLikesCount(latest[0]) + " J'aime");
             });
         }
 
@@ -303,6 +469,7 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         }
 
         dialog.setOnDismissListener(d -> {
+            LikeIndex.getInstance().removeListener(heartListener);
             if (sheetListener != null) sheetListener.remove();
         });
 
@@ -348,9 +515,19 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         }
     }
 
+    @Override
+    public void onStart() {
+        super.onStart();
+        loadIncidentMarkers();
+    }
+
     @Override
     public void onStop() {
         super.onStop();
         if (locationHelper != null) locationHelper.stopLocationUpdates();
+        if (incidentsRegistration != null) {
+            incidentsRegistration.remove();
+            incidentsRegistration = null;
+        }
     }
 }
\ No newline at end of file
@@ -18,6 +18,8 @@ import com.example.safecity.R;
 import com.example.safecity.model.NotificationApp;
 import com.example.safecity.ui.adapters.NotificationAdapter;
 import com.example.safecity.utils.FirestoreRepository;
+import com.example.safecity.utils.KeyedSnapshotList;
+import com.example.safecity.utils.SyncEngine;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.firestore.ListenerRegistration;
@@ -29,6 +31,7 @@ public class NotificationsFragment extends Fragment implements NotificationAdapt
 
     public interface NotificationNavigationListener {
         void navigateToIncident(String incidentId);
+        void onNotificationsRead();
     }
 
     private RecyclerView recyclerView;
@@ -36,6 +39,7 @@ public class NotificationsFragment extends Fragment implements NotificationAdapt
     private NotificationAdapter adapter;
     private FirestoreRepository firestoreRepo;
     private ListenerRegistration notificationListener;
+    private boolean liveNotificationsLoaded = false;
     private String currentUserId;
     private NotificationNavigationListener navigationListener;
 
@@ -66,7 +70,7 @@ public class NotificationsFragment extends Fragment implements NotificationAdapt
         adapter = new NotificationAdapter(getContext(), new ArrayList<>(), this);
         recyclerView.setAdapter(adapter);
 
-        firestoreRepo = new FirestoreRepository();
+        firestoreRepo = new FirestoreRepository("notifications");
 
         FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
         if (user != null) {
@@ -81,6 +85,7 @@ public class NotificationsFragment extends Fragment implements NotificationAdapt
     public void onStart() {
         super.onStart();
         loadNotifications();
+        markAllAsRead();
     }
 
     @Override
@@ -93,13 +98,29 @@ public class NotificationsFragment extends Fragment implements NotificationAdapt
 
     private void loadNotifications() {
         if (currentUserId == null) return;
+        SyncEngine sync = SyncEngine.getInstance(requireContext());
+        liveNotificationsLoaded = false;
 
-        notificationListener = firestoreRepo.getNotifications(currentUserId, new FirestoreRepository.OnNotificationsLoadedListener() {
+        // Dernières notifications connues, affichées en attendant (ou à défaut) Firestore
+        sync.loadNotifications(currentUserId, new FirestoreRepository.OnListChangedListener<NotificationApp>() {
             @Override
-            public void onNotificationsLoaded(List<NotificationApp> notifications) {
+            public void onListChanged(List<NotificationApp> notifications, List<KeyedSnapshotList.Change> changes) {
+                if (!isAdded() || adapter == null || liveNotificationsLoaded || notifications.isEmpty()) return;
+                adapter.applyChanges(notifications, null);
+                updateEmptyState(false);
+            }
+            @Override
+            public void onError(Exception e) {}
+        });
+
+        notificationListener = firestoreRepo.getNotifications(currentUserId, new FirestoreRepository.OnListChangedListener<NotificationApp>() {
+            @Override
+            public void onListChanged(List<NotificationApp> notifications, List<KeyedSnapshotList.Change> changes) {
                 if (isAdded() && adapter != null) {
-                    adapter.updateData(notifications);
+                    liveNotificationsLoaded = true;
+                    adapter.applyChanges(notifications, changes);
                     updateEmptyState(notifications.isEmpty());
+                    sync.saveNotifications(currentUserId, notifications);
                 }
             }
 
@@ -107,12 +128,29 @@ public class NotificationsFragment extends Fragment implements NotificationAdapt
             public void onError(Exception e) {
                 if (isAdded()) {
                     Toast.makeText(getContext(), "Erreur chargement : " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                    updateEmptyState(true);
+                    updateEmptyState(adapter.getItemCount() == 0);
                 }
             }
         });
     }
 
+    /**
+     * L'ouverture de l'écran vaut lecture : les non lues passent à lu = true en écritures groupées,
+     * puis le badge de la barre de navigation est retiré.
+     */
+    private void markAllAsRead() {
+        if (currentUserId == null) return;
+        firestoreRepo.markNotificationsRead(currentUserId, new FirestoreRepository.OnFirestoreTaskComplete() {
+            @Override
+            public void onSuccess() {
+                if (navigationListener != null) navigationListener.onNotificationsRead();
+            }
+
+            @Override
+            public void onError(Exception e) {}
+        });
+    }
+
     private void updateEmptyState(boolean isEmpty) {
         if (isEmpty) {
             recyclerView.setVisibility(View.GONE);
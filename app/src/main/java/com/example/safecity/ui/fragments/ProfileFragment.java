@@ -32,14 +32,16 @@ import com.example.safecity.model.Incident;
 import com.example.safecity.model.Utilisateur;
 import com.example.safecity.ui.adapters.IncidentAdapter;
 import com.example.safecity.utils.FirestoreRepository;
+import com.example.safecity.utils.LikeIndex;
+import com.example.safecity.utils.LikeManager;
+import com.example.safecity.utils.SyncEngine;
+import com.example.safecity.utils.UserCache;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.auth.UserProfileChangeRequest;
-import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.WriteBatch;
 import com.google.firebase.storage.FirebaseStorage;
 import com.google.firebase.storage.StorageReference;
 
@@ -105,7 +107,7 @@ public class ProfileFragment extends Fragment implements IncidentAdapter.OnIncid
         recyclerView.setAdapter(adapter);
 
         auth = FirebaseAuth.getInstance();
-        firestoreRepo = new FirestoreRepository();
+        firestoreRepo = new FirestoreRepository("profile");
 
         // Événements
         imgProfile.setOnClickListener(v -> galleryLauncher.launch("image/*"));
@@ -116,6 +118,10 @@ public class ProfileFragment extends Fragment implements IncidentAdapter.OnIncid
         }
 
         btnLogout.setOnClickListener(v -> {
+            UserCache.getInstance().clear();
+            LikeManager.getInstance().cancelAll();
+            LikeIndex.getInstance().clear();
+            SyncEngine.getInstance(requireContext()).clear();
             auth.signOut();
             if (getActivity() != null) {
                 Intent intent = new Intent(getActivity(), LoginActivity.class);
@@ -212,28 +218,8 @@ public class ProfileFragment extends Fragment implements IncidentAdapter.OnIncid
                             .setPhotoUri(Uri.parse(urlString))
                             .build();
 
+                    // Incidents et commentaires sont mis à jour côté serveur (syncUserProfile)
                     user.updateProfile(profileUpdates).addOnCompleteListener(task -> {
-                        updateAllUserIncidents(user.getUid(), urlString);
-                    });
-                });
-    }
-
-    private void updateAllUserIncidents(String userId, String newPhotoUrl) {
-        FirebaseFirestore firestore = FirebaseFirestore.getInstance();
-        firestore.collection("incidents")
-                .whereEqualTo("idUtilisateur", userId)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    if (queryDocumentSnapshots.isEmpty()) {
-                        loadProfileData();
-                        return;
-                    }
-
-                    WriteBatch batch = firestore.batch();
-                    for (DocumentSnapshot doc : queryDocumentSnapshots) {
-                        batch.update(doc.getReference(), "auteurPhotoUrl", newPhotoUrl);
-                    }
-                    batch.commit().addOnSuccessListener(aVoid -> {
                         if (isAdded()) {
                             Toast.makeText(getContext(), "Profil mis à jour !", Toast.LENGTH_SHORT).show();
                             loadProfileData();
@@ -289,36 +275,15 @@ public class ProfileFragment extends Fragment implements IncidentAdapter.OnIncid
                             .build();
 
                     user.updateProfile(updates).addOnCompleteListener(task -> {
-                        tvName.setText(newName);
-                        updateNameInAllIncidents(user.getUid(), newName);
-                    });
-                })
-                .addOnFailureListener(e -> {
-                    Toast.makeText(getContext(), "Erreur : " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                });
-    }
-
-    private void updateNameInAllIncidents(String userId, String newName) {
-        FirebaseFirestore firestore = FirebaseFirestore.getInstance();
-        firestore.collection("incidents")
-                .whereEqualTo("idUtilisateur", userId)
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    if (querySnapshot.isEmpty()) {
-                        loadProfileData();
-                        return;
-                    }
-
-                    WriteBatch batch = firestore.batch();
-                    for (DocumentSnapshot doc : querySnapshot) {
-                        batch.update(doc.getReference(), "nomUtilisateur", newName);
-                    }
-                    batch.commit().addOnSuccessListener(aVoid -> {
                         if (isAdded()) {
+                            tvName.setText(newName);
                             Toast.makeText(getContext(), "Nom actualisé partout !", Toast.LENGTH_SHORT).show();
                             loadProfileData();
                         }
                     });
+                })
+                .addOnFailureListener(e -> {
+                    Toast.makeText(getContext(), "Erreur : " + e.getMessage(), Toast.LENGTH_SHORT).show();
                 });
     }
 
@@ -341,7 +306,7 @@ public class ProfileFragment extends Fragment implements IncidentAdapter.OnIncid
         new MaterialAlertDialogBuilder(requireContext())
                 .setTitle("Supprimer ?")
                 .setMessage("Voulez-vous supprimer ce signalement ? Cette action est irréversible.")
-                .setPositiveButton("Supprimer", (d, w) -> firestoreRepo.deleteIncident(incident.getId(), incident.getPhotoUrl(), new FirestoreRepository.OnFirestoreTaskComplete() {
+                .setPositiveButton("Supprimer", (d, w) -> firestoreRepo.deleteIncident(incident.getId(), new FirestoreRepository.OnFirestoreTaskComplete() {
                     @Override public void onSuccess() {
                         Toast.makeText(getContext(), "Supprimé.", Toast.LENGTH_SHORT).show();
                         loadProfileData();
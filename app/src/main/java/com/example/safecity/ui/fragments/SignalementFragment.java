@@ -38,9 +38,12 @@ import com.example.safecity.model.Categorie;
 import com.example.safecity.model.Incident;
 import com.example.safecity.model.Utilisateur;
 import com.example.safecity.utils.AppExecutors;
+import com.example.safecity.utils.CategoryCache;
 import com.example.safecity.utils.FirestoreRepository;
+import com.example.safecity.utils.IncidentOutbox;
 import com.example.safecity.utils.ImageUtils;
 import com.example.safecity.utils.LocationHelper;
+import com.example.safecity.utils.SourcePolicy;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.storage.FirebaseStorage;
@@ -122,7 +125,7 @@ public class SignalementFragment extends Fragment implements LocationHelper.Loca
         tvHeader = view.findViewById(R.id.tv_header);
         cbNoGps = view.findViewById(R.id.cb_no_gps);
 
-        firestoreRepo = new FirestoreRepository();
+        firestoreRepo = new FirestoreRepository("signalement");
 
         if (getArguments() != null) {
             editingIncidentId = getArguments().getString(ARG_INCIDENT_ID, null);
@@ -163,37 +166,59 @@ public class SignalementFragment extends Fragment implements LocationHelper.Loca
         });
     }
 
+    /**
+     * Affiche tout de suite le catalogue en cache disque et démarre le formulaire sans attendre
+     * le réseau ; le catalogue n'est rechargé en arrière-plan que si sa version a changé.
+     */
     private void loadCategoriesAndInit() {
-        firestoreRepo.getCategories(new FirestoreRepository.OnCategoriesLoadedListener() {
+        List<Categorie> cached = CategoryCache.read(requireContext());
+        if (!cached.isEmpty()) showCategories(cached);
+
+        if (editingIncidentId != null) {
+            tvHeader.setText("Modifier le signalement");
+            btnSubmit.setText("Mettre à jour");
+            loadIncidentData(editingIncidentId);
+        } else {
+            checkLocationPermissionAndStart();
+        }
+
+        firestoreRepo.refreshCategoriesIfStale(requireContext(), new FirestoreRepository.OnCategoriesLoadedListener() {
             @Override
             public void onCategoriesLoaded(List<Categorie> cats) {
                 if (!isAdded() || getActivity() == null) return;
-
-                if (cats != null && !cats.isEmpty()) {
-                    mCategoriesList = cats;
-                    List<String> catNames = new ArrayList<>();
-                    for (Categorie c : cats) catNames.add(c.getNomCategorie());
-
-                    ArrayAdapter<String> adapter = new ArrayAdapter<>(requireContext(),
-                            android.R.layout.simple_dropdown_item_1line, catNames);
-                    autoCompleteType.setAdapter(adapter);
-                }
-
-                if (editingIncidentId != null) {
-                    tvHeader.setText("Modifier le signalement");
-                    btnSubmit.setText("Mettre à jour");
-                    loadIncidentData(editingIncidentId);
-                } else {
-                    checkLocationPermissionAndStart();
-                }
+                if (cats != null && !cats.isEmpty()) showCategories(cats);
             }
             @Override
             public void onError(Exception e) {}
         });
     }
 
+    private void showCategories(List<Categorie> cats) {
+        mCategoriesList = cats;
+        List<String> catNames = new ArrayList<>();
+        for (Categorie c : cats) catNames.add(c.getNomCategorie());
+
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(requireContext(),
+                android.R.layout.simple_dropdown_item_1line, catNames);
+        autoCompleteType.setAdapter(adapter);
+
+        // Le catalogue a pu arriver après la sélection : on la rattache à la nouvelle liste
+        String selectedName = mSelectedCategory != null ? mSelectedCategory.getNomCategorie()
+                : (incidentToEdit != null ? incidentToEdit.getNomCategorie() : null);
+        if (selectedName != null) mSelectedCategory = findCategory(selectedName);
+    }
+
+    private Categorie findCategory(String name) {
+        for (Categorie c : mCategoriesList) {
+            if (c.getNomCategorie() != null && c.getNomCategorie().equals(name)) return c;
+        }
+        return null;
+    }
+
     private void loadIncidentData(String id) {
-        firestoreRepo.getIncident(id, new FirestoreRepository.OnIncidentLoadedListener() {
+        // Version serveur uniquement : le formulaire ne doit pas partir d'une copie en cache périmée.
+        // Un seul résultat : une seconde livraison écraserait ce que l'utilisateur a déjà modifié
+        firestoreRepo.getIncident(id, SourcePolicy.SERVER_ONLY, new FirestoreRepository.OnIncidentLoadedListener() {
             @Override
             public void onIncidentLoaded(Incident incident) {
                 if (!isAdded()) return;
@@ -202,12 +227,7 @@ public class SignalementFragment extends Fragment implements LocationHelper.Loca
 
                 if (incident.getNomCategorie() != null) {
                     autoCompleteType.setText(incident.getNomCategorie(), false);
-                    for (Categorie c : mCategoriesList) {
-                        if (c.getNomCategorie().equals(incident.getNomCategorie())) {
-                            mSelectedCategory = c;
-                            break;
-                        }
-                    }
+                    mSelectedCategory = findCategory(incident.getNomCategorie());
                 }
 
                 if (incident.getPhotoUrl() != null && !incident.getPhotoUrl().isEmpty()) {
@@ -297,10 +317,19 @@ public class SignalementFragment extends Fragment implements LocationHelper.Loca
         }
 
         btnSubmit.setEnabled(false);
+        if (editingIncidentId == null) {
+            // Nouveau signalement : enregistré localement puis envoyé en arrière-plan, même hors ligne
+            if (finalPhotoPath == null) incident.setPhotoUrl("");
+            IncidentOutbox.enqueue(requireContext(), incident, finalPhotoPath);
+            finalPhotoPath = null;
+            Toast.makeText(getContext(), "Signalement enregistré, envoi en cours", Toast.LENGTH_LONG).show();
+            getParentFragmentManager().popBackStack();
+            return;
+        }
+
         if (finalPhotoPath != null) {
             uploadImageAndSave(incident);
         } else {
-            if (editingIncidentId == null && incident.getPhotoUrl() == null) incident.setPhotoUrl("");
             saveToFirestore(incident);
         }
     }
@@ -308,7 +337,8 @@ public class SignalementFragment extends Fragment implements LocationHelper.Loca
     private void uploadImageAndSave(Incident incident) {
         if (getContext() == null) return;
         Uri fileUri = Uri.fromFile(new File(finalPhotoPath));
-        String fileName = "incident_" + UUID.randomUUID().toString() + ".jpg";
+        // Préfixé par l'id de l'incident : la fonction onIncidentDeleted retrouve toutes ses photos
+        String fileName = editingIncidentId + "_" + UUID.randomUUID().toString() + ".jpg";
         StorageReference storageRef = FirebaseStorage.getInstance().getReference().child("incident_images/" + fileName);
 
         storageRef.putFile(fileUri)
@@ -337,43 +367,22 @@ public class SignalementFragment extends Fragment implements LocationHelper.Loca
     }
 
     private void saveToFirestore(Incident incident) {
-        if (editingIncidentId != null) {
-            firestoreRepo.updateIncidentDetails(incident, new FirestoreRepository.OnFirestoreTaskComplete() {
-                @Override
-                public void onSuccess() {
-                    if (isAdded()) {
-                        Toast.makeText(getContext(), "Mis à jour avec succès !", Toast.LENGTH_SHORT).show();
-                        getParentFragmentManager().popBackStack();
-                    }
-                }
-                @Override
-                public void onError(Exception e) {
-                    if (isAdded()) {
-                        btnSubmit.setEnabled(true);
-                        Toast.makeText(getContext(), "Erreur : " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                    }
-                }
-            });
-        } else {
-            firestoreRepo.addIncident(incident, new FirestoreRepository.OnFirestoreTaskComplete() {
-                @Override
-                public void onSuccess() {
-                    if (isAdded()) {
-                        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
-                        if (user != null) firestoreRepo.incrementUserScore(user.getUid(), 10);
-                        Toast.makeText(getContext(), "Signalement envoyé ! (+10 pts)", Toast.LENGTH_LONG).show();
-                        getParentFragmentManager().popBackStack();
-                    }
+        firestoreRepo.updateIncidentDetails(incident, new FirestoreRepository.OnFirestoreTaskComplete() {
+            @Override
+            public void onSuccess() {
+                if (isAdded()) {
+                    Toast.makeText(getContext(), "Mis à jour avec succès !", Toast.LENGTH_SHORT).show();
+                    getParentFragmentManager().popBackStack();
                 }
-                @Override
-                public void onError(Exception e) {
-                    if (isAdded()) {
-                        btnSubmit.setEnabled(true);
-                        Toast.makeText(getContext(), "Erreur d'envoi : " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                    }
+            }
+            @Override
+            public void onError(Exception e) {
+                if (isAdded()) {
+                    btnSubmit.setEnabled(true);
+                    Toast.makeText(getContext(), "Erreur : " + e.getMessage(), Toast.LENGTH_SHORT).show();
                 }
-            });
-        }
+            }
+        });
     }
 
     @Override
@@ -3,12 +3,13 @@ package com.example.safecity.utils;
 import android.os.Handler;
 import android.os.Looper;
 import androidx.annotation.NonNull;
+import java.util.ArrayDeque;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
 /**
  * Gestionnaire global des exécuteurs de threads.
- * Permet de séparer les accès disque, réseau et les mises à jour UI.
+ * Permet de séparer les accès disque, réseau, le traitement des snapshots Firestore et les mises à jour UI.
  */
 public class AppExecutors {
 
@@ -17,10 +18,12 @@ public class AppExecutors {
     private final Executor diskIO;
     private final Executor mainThread;
     private final Executor networkIO;
+    private final Executor snapshotIO;
 
-    private AppExecutors(Executor diskIO, Executor networkIO, Executor mainThread) {
+    private AppExecutors(Executor diskIO, Executor networkIO, Executor snapshotIO, Executor mainThread) {
         this.diskIO = diskIO;
         this.networkIO = networkIO;
+        this.snapshotIO = snapshotIO;
         this.mainThread = mainThread;
     }
 
@@ -30,6 +33,7 @@ public class AppExecutors {
                 sInstance = new AppExecutors(
                         Executors.newSingleThreadExecutor(),
                         Executors.newFixedThreadPool(3),
+                        Executors.newFixedThreadPool(2),
                         new MainThreadExecutor()
                 );
             }
@@ -43,6 +47,41 @@ public class AppExecutors {
 
     public Executor networkIO() { return networkIO; }
 
+    /** Pool dédié à la désérialisation des snapshots et au filtrage des listes. */
+    public Executor snapshotIO() { return snapshotIO; }
+
+    /**
+     * Exécuteur séquentiel adossé à snapshotIO : les tâches d'un même client
+     * s'exécutent dans l'ordre, sans bloquer les autres clients du pool.
+     */
+    public Executor newSerialExecutor() { return new SerialExecutor(snapshotIO); }
+
+    private static class SerialExecutor implements Executor {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private final Executor executor;
+        private Runnable active;
+
+        SerialExecutor(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public synchronized void execute(@NonNull Runnable command) {
+            tasks.offer(() -> {
+                try {
+                    command.run();
+                } finally {
+                    scheduleNext();
+                }
+            });
+            if (active == null) scheduleNext();
+        }
+
+        private synchronized void scheduleNext() {
+            if ((active = tasks.poll()) != null) executor.execute(active);
+        }
+    }
+
     private static class MainThreadExecutor implements Executor {
         private final Handler mainThreadHandler = new Handler(Looper.getMainLooper());
 
@@ -0,0 +1,74 @@
+package com.example.safecity.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.example.safecity.model.Categorie;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copie disque du catalogue des catégories, accompagnée de la version du document meta/categories.
+ * Le catalogue change rarement : il est servi de façon synchrone depuis le disque et n'est
+ * rechargé depuis Firestore que lorsque la version distante diffère.
+ */
+public class CategoryCache {
+
+    private static final String PREFS_NAME = "category_cache";
+    private static final String KEY_CATEGORIES = "categories_json";
+    private static final String KEY_VERSION = "version";
+
+    /** Version signalant qu'aucun catalogue n'a encore été mis en cache. */
+    public static final long NO_VERSION = -1;
+
+    private CategoryCache() {}
+
+    public static List<Categorie> read(Context context) {
+        List<Categorie> list = new ArrayList<>();
+        String json = prefs(context).getString(KEY_CATEGORIES, null);
+        if (json == null) return list;
+        try {
+            JSONArray array = new JSONArray(json);
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject o = array.getJSONObject(i);
+                list.add(new Categorie(o.optString("id", null), o.optString("nomCategorie", null)));
+            }
+        } catch (JSONException e) {
+            // Cache corrompu : on repart d'un catalogue vide, il sera rechargé
+            prefs(context).edit().clear().apply();
+            list.clear();
+        }
+        return list;
+    }
+
+    public static long getVersion(Context context) {
+        return prefs(context).getLong(KEY_VERSION, NO_VERSION);
+    }
+
+    public static void write(Context context, List<Categorie> categories, long version) {
+        JSONArray array = new JSONArray();
+        try {
+            for (Categorie c : categories) {
+                JSONObject o = new JSONObject();
+                o.put("id", c.getId());
+                o.put("nomCategorie", c.getNomCategorie());
+                array.put(o);
+            }
+        } catch (JSONException e) {
+            return;
+        }
+        prefs(context).edit()
+                .putString(KEY_CATEGORIES, array.toString())
+                .putLong(KEY_VERSION, version)
+                .apply();
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.safecity.utils;
+
+import com.example.safecity.model.Incident;
+import com.google.maps.android.clustering.ClusterManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Passe d'un ensemble d'incidents filtrés au suivant sans vider le ClusterManager :
+ * seuls les incidents ajoutés, retirés ou dont l'apparence sur la carte a changé sont transmis,
+ * et le regroupement n'est relancé que s'il y a au moins une différence.
+ * Un like ou un nouveau commentaire ne change pas l'apparence d'un marqueur : aucun redessin.
+ * <p>
+ * {@link #diff} s'appelle depuis un exécuteur séquentiel (il met à jour l'état de référence),
+ * {@link #apply} sur le thread principal, chaque Diff dans l'ordre où il a été calculé.
+ * Un Diff calculé avant {@link #reset} part d'un état oublié : {@link #apply} l'ignore.
+ */
+public class ClusterItemDiffer {
+
+    /** Différences entre l'état présent dans le ClusterManager et le nouvel ensemble. */
+    public static class Diff {
+        public final List<Incident> added = new ArrayList<>();
+        public final List<Incident> removed = new ArrayList<>();
+        // Paires (instance présente dans le ClusterManager, nouvelle instance)
+        public final List<Incident> changedOld = new ArrayList<>();
+        public final List<Incident> changedNew = new ArrayList<>();
+        // Génération de l'état de référence dont ce Diff est parti
+        final int generation;
+
+        Diff(int generation) {
+            this.generation = generation;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && changedNew.isEmpty();
+        }
+    }
+
+    // Instances transmises au ClusterManager, par id (celles que l'algorithme sait retirer)
+    private Map<String, Incident> applied = new HashMap<>();
+    // Dernière version reçue de chaque incident (compteurs, photo...) pour la fiche détaillée
+    private Map<String, Incident> latest = new HashMap<>();
+    // Incrémentée à chaque reset : un Diff d'une génération antérieure visait l'ancien ClusterManager
+    private int generation = 0;
+
+    /**
+     * Calcule les différences avec {@code target} et le prend comme nouvel état de référence.
+     */
+    public synchronized Diff diff(List<Incident> target) {
+        Diff diff = new Diff(generation);
+        Map<String, Incident> next = new HashMap<>(target.size() * 2);
+        Map<String, Incident> nextLatest = new HashMap<>(target.size() * 2);
+        for (Incident inc : target) {
+            if (inc.getId() == null || next.containsKey(inc.getId())) continue;
+            nextLatest.put(inc.getId(), inc);
+            Incident previous = applied.remove(inc.getId());
+            if (previous == null) {
+                diff.added.add(inc);
+                next.put(inc.getId(), inc);
+            } else if (sameAppearance(previous, inc)) {
+                next.put(inc.getId(), previous);
+            } else {
+                diff.changedOld.add(previous);
+                diff.changedNew.add(inc);
+                next.put(inc.getId(), inc);
+            }
+        }
+        diff.removed.addAll(applied.values());
+        applied = next;
+        latest = nextLatest;
+        return diff;
+    }
+
+    /**
+     * Applique {@code diff} au ClusterManager. Retourne {@code false} (sans regrouper) s'il est vide
+     * ou s'il a été calculé avant le dernier {@link #reset}.
+     */
+    public boolean apply(Diff diff, ClusterManager<Incident> clusterManager) {
+        synchronized (this) {
+            if (diff.generation != generation) return false;
+        }
+        if (diff.isEmpty()) return false;
+        // L'algorithme retire par égalité d'instance : on retire l'ancienne puis on ajoute la nouvelle
+        clusterManager.removeItems(diff.removed);
+        clusterManager.removeItems(diff.changedOld);
+        clusterManager.addItems(diff.added);
+        clusterManager.addItems(diff.changedNew);
+        clusterManager.cluster();
+        return true;
+    }
+
+    /** Dernière version connue d'un incident affiché (le ClusterManager peut garder une instance plus ancienne). */
+    public synchronized Incident latest(Incident item) {
+        Incident inc = latest.get(item.getId());
+        return inc != null ? inc : item;
+    }
+
+    /** Oublie l'état de référence (nouveau ClusterManager, ou ClusterManager vidé). */
+    public synchronized void reset() {
+        generation++;
+        applied = new HashMap<>();
+        latest = new HashMap<>();
+    }
+
+    /** Champs qui influencent le marqueur : position, titre, texte, statut et catégorie. */
+    private static boolean sameAppearance(Incident a, Incident b) {
+        return a.getLatitude() == b.getLatitude()
+                && a.getLongitude() == b.getLongitude()
+                && Objects.equals(a.getStatut(), b.getStatut())
+                && Objects.equals(a.getNomCategorie(), b.getNomCategorie())
+                && Objects.equals(a.getDescription(), b.getDescription());
+    }
+}
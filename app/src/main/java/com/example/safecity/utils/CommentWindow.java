@@ -0,0 +1,173 @@
+package com.example.safecity.utils;
+
+import com.example.safecity.model.Comment;
+import com.google.firebase.firestore.ListenerRegistration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fil de commentaires d'un incident, paginé par curseur.
+ * Seule la page la plus récente est écoutée en temps réel (limitToLast) : ouvrir une discussion
+ * chargée coûte une page de lectures. Les pages plus anciennes sont chargées à la demande quand
+ * l'utilisateur remonte, et ajoutées en haut de la liste.
+ * Les deltas transmis sont exprimés dans la liste complète (anciennes pages + page récente),
+ * prêts pour {@link KeyedSnapshotList#dispatch}.
+ */
+public class CommentWindow {
+
+    public static final int DEFAULT_PREFETCH_DISTANCE = 5;
+
+    public interface OnWindowChangedListener {
+        void onWindowChanged(List<Comment> comments, List<KeyedSnapshotList.Change> changes);
+        void onError(Exception e);
+    }
+
+    private final FirestoreRepository repo;
+    private final String incidentId;
+    private final int pageSize;
+    private final int prefetchDistance;
+    private final OnWindowChangedListener listener;
+
+    private ListenerRegistration headRegistration;
+    // Commentaires déjà sortis de la page temps réel, du plus ancien au plus récent
+    private final List<Comment> older = new ArrayList<>();
+    private List<Comment> head = new ArrayList<>();
+
+    private boolean loading = false;
+    private boolean endReached = false;
+    private int generation = 0;
+
+    public CommentWindow(FirestoreRepository repo, String incidentId, OnWindowChangedListener listener) {
+        this(repo, incidentId, FirestoreRepository.COMMENTS_PAGE_SIZE, DEFAULT_PREFETCH_DISTANCE, listener);
+    }
+
+    public CommentWindow(FirestoreRepository repo, String incidentId, int pageSize, int prefetchDistance,
+                         OnWindowChangedListener listener) {
+        this.repo = repo;
+        this.incidentId = incidentId;
+        this.pageSize = pageSize;
+        this.prefetchDistance = prefetchDistance;
+        this.listener = listener;
+    }
+
+    /**
+     * Démarre l'écoute de la page récente. Les pages anciennes repartent de zéro.
+     */
+    public void start() {
+        stop();
+        final int gen = generation;
+        headRegistration = repo.getCommentsRealtime(incidentId, pageSize, new FirestoreRepository.OnListChangedListener<Comment>() {
+            @Override
+            public void onListChanged(List<Comment> comments, List<KeyedSnapshotList.Change> changes) {
+                if (gen != generation) return;
+                onHeadChanged(comments, changes);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (gen == generation) listener.onError(e);
+            }
+        });
+    }
+
+    public void stop() {
+        generation++;
+        if (headRegistration != null) {
+            headRegistration.remove();
+            headRegistration = null;
+        }
+        older.clear();
+        head = new ArrayList<>();
+        loading = false;
+        endReached = false;
+    }
+
+    /** Page temps réel courante, du plus ancien au plus récent (à sauvegarder pour l'affichage hors ligne). */
+    public List<Comment> getHead() {
+        return new ArrayList<>(head);
+    }
+
+    /**
+     * À appeler depuis le défilement de la liste : charge la page précédente quand le haut approche.
+     */
+    public void onScrollPositionChanged(int firstVisible) {
+        if (loading || endReached || headRegistration == null) return;
+        if (firstVisible <= prefetchDistance) loadOlderPage();
+    }
+
+    private void onHeadChanged(List<Comment> comments, List<KeyedSnapshotList.Change> changes) {
+        List<Comment> previous = head;
+        head = comments;
+        if (changes == null) {
+            // Premier snapshot : tout l'affichage est reconstruit
+            if (comments.size() < pageSize && older.isEmpty()) endReached = true;
+            listener.onWindowChanged(all(), null);
+            return;
+        }
+
+        // Les deltas de la page récente sont décalés du nombre de commentaires plus anciens.
+        // Un commentaire qui glisse hors de la fenêtre (retiré en tête alors qu'elle était pleine)
+        // rejoint les anciens au lieu de disparaître de l'écran : sa position ne change pas.
+        List<KeyedSnapshotList.Change> shifted = new ArrayList<>(changes.size());
+        List<Comment> working = new ArrayList<>(previous);
+        for (KeyedSnapshotList.Change c : changes) {
+            if (c.type == KeyedSnapshotList.Change.REMOVED && c.oldIndex == 0 && previous.size() >= pageSize) {
+                older.add(working.remove(0));
+                continue;
+            }
+            int offset = older.size();
+            switch (c.type) {
+                case KeyedSnapshotList.Change.INSERTED:
+                    working.add(c.newIndex, null);
+                    break;
+                case KeyedSnapshotList.Change.REMOVED:
+                    working.remove(c.oldIndex);
+                    break;
+                case KeyedSnapshotList.Change.MOVED:
+                    working.add(c.newIndex, working.remove(c.oldIndex));
+                    break;
+            }
+            shifted.add(new KeyedSnapshotList.Change(c.type,
+                    c.oldIndex < 0 ? -1 : c.oldIndex + offset,
+                    c.newIndex < 0 ? -1 : c.newIndex + offset));
+        }
+        listener.onWindowChanged(all(), shifted);
+    }
+
+    private void loadOlderPage() {
+        Comment before = !older.isEmpty() ? older.get(0) : (!head.isEmpty() ? head.get(0) : null);
+        if (before == null || before.getDatePublication() == null) return;
+        loading = true;
+        final int gen = generation;
+        repo.getCommentsPage(incidentId, before, pageSize, new FirestoreRepository.OnCommentsLoadedListener() {
+            @Override
+            public void onCommentsLoaded(List<Comment> comments) {
+                if (gen != generation) return;
+                loading = false;
+                endReached = comments.size() < pageSize;
+                if (comments.isEmpty()) return;
+                older.addAll(0, comments);
+                List<KeyedSnapshotList.Change> changes = new ArrayList<>(comments.size());
+                for (int i = 0; i < comments.size(); i++) {
+                    changes.add(new KeyedSnapshotList.Change(KeyedSnapshotList.Change.INSERTED, -1, i));
+                }
+                listener.onWindowChanged(all(), changes);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (gen != generation) return;
+                loading = false;
+                listener.onError(e);
+            }
+        });
+    }
+
+    private List<Comment> all() {
+        List<Comment> all = new ArrayList<>(older.size() + head.size());
+        all.addAll(older);
+        all.addAll(head);
+        return all;
+    }
+}
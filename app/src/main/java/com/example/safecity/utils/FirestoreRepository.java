@@ -1,21 +1,39 @@
 package com.example.safecity.utils;
 
+import android.content.Context;
+
 import com.example.safecity.model.Categorie;
 import com.example.safecity.model.Comment;
 import com.example.safecity.model.Incident;
 import com.example.safecity.model.NotificationApp;
 import com.example.safecity.model.Role;
 import com.example.safecity.model.Utilisateur;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.AggregateSource;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.Query;
-import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+import com.google.firebase.firestore.WriteBatch;
 
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 public class FirestoreRepository {
 
@@ -28,28 +46,69 @@ public class FirestoreRepository {
     private static final String COL_CATEGORIES = "categories";
     private static final String COL_ROLES = "roles";
     private static final String COL_COMMENTS = "comments";
+    private static final String COL_LIKES = "likes";
+    private static final String COL_DELETED_INCIDENTS = "deleted_incidents";
+    private static final String COL_META = "meta";
+    private static final String DOC_META_CATEGORIES = "categories";
+
+    /** Taille d'une page du fil d'actualité (tête temps réel et pages plus anciennes). */
+    public static final int INCIDENTS_PAGE_SIZE = 20;
+    /** Nombre d'incidents récents suivis en temps réel, partagé par le fil et la carte. */
+    public static final int LIVE_INCIDENTS_LIMIT = 50;
+    /** Taille d'une page de commentaires (page récente temps réel et pages plus anciennes). */
+    public static final int COMMENTS_PAGE_SIZE = 30;
+    /** Nombre maximal d'écritures dans un WriteBatch Firestore. */
+    private static final int MAX_BATCH_WRITES = 500;
+    /** Taille d'une page de lecture d'une plage de geohash (zone visible de la carte). */
+    public static final int VIEWPORT_RANGE_LIMIT = 200;
+    /** Points gagnés par l'auteur d'un nouveau signalement. */
+    public static final int INCIDENT_SCORE_POINTS = 10;
+
+    // Si actif, les snapshots sont désérialisés hors du thread UI et seul le résultat y est posté
+    private static volatile boolean offMainThreadSnapshots = true;
+
+    /** Écran attribué aux appels d'un repository créé sans nom (services, workers). */
+    public static final String SCREEN_APP = "app";
+
+    private final String screen;
 
     public FirestoreRepository() {
+        this(SCREEN_APP);
+    }
+
+    /**
+     * @param screen écran appelant, sous lequel les lectures et écritures sont comptées (RepositoryMetrics)
+     */
+    public FirestoreRepository(String screen) {
         this.db = FirebaseFirestore.getInstance();
+        this.screen = screen;
+    }
+
+    public static void setOffMainThreadSnapshots(boolean enabled) {
+        offMainThreadSnapshots = enabled;
     }
 
     public interface OnFirestoreTaskComplete { void onSuccess(); void onError(Exception e); }
     public interface OnDataLoadListener { void onIncidentsLoaded(List<Incident> incidents); void onError(Exception e); }
     public interface OnIncidentLoadedListener { void onIncidentLoaded(Incident incident); void onError(Exception e); }
-    public interface OnNotificationsLoadedListener { void onNotificationsLoaded(List<NotificationApp> notifications); void onError(Exception e); }
     public interface OnUserLoadedListener { void onUserLoaded(Utilisateur utilisateur); void onError(Exception e); }
-    public interface OnCommentsLoadedListener { void onCommentsLoaded(List<Comment> comments); void onError(Exception e); }
     public interface OnRolesLoadedListener { void onRolesLoaded(List<Role> roles); void onError(Exception e); }
     public interface OnCategoriesLoadedListener { void onCategoriesLoaded(List<Categorie> categories); void onError(Exception e); }
+    public interface OnSyncPageLoadedListener { void onPageLoaded(List<Incident> incidents, Timestamp lastUpdatedAt, String lastId, boolean full); void onError(Exception e); }
+    public interface OnTombstonesLoadedListener { void onTombstonesLoaded(List<String> ids, Date latest); void onError(Exception e); }
+    public interface OnCountLoadedListener { void onCountLoaded(long count); void onError(Exception e); }
+    public interface OnCommentsLoadedListener { void onCommentsLoaded(List<Comment> comments); void onError(Exception e); }
+    public interface OnListChangedListener<T> { void onListChanged(List<T> items, List<KeyedSnapshotList.Change> changes); void onError(Exception e); }
 
 
     public void validateIncident(String incidentId, String authorId, boolean isValid, OnFirestoreTaskComplete listener) {
         String newStatus = isValid ? Incident.STATUT_TRAITE : "Rejeté";
         int pointsChange = isValid ? 20 : -10;
+        RepositoryMetrics.Tracker tracker = track("validateIncident");
 
         db.runTransaction(transaction -> {
             DocumentReference incRef = db.collection(COL_INCIDENTS).document(incidentId);
-            transaction.update(incRef, "statut", newStatus);
+            transaction.update(incRef, "statut", newStatus, "updatedAt", FieldValue.serverTimestamp());
 
             if (authorId != null && !authorId.isEmpty()) {
                 DocumentReference userRef = db.collection(COL_USERS).document(authorId);
@@ -59,13 +118,19 @@ public class FirestoreRepository {
                 }
             }
             return null;
-        }).addOnSuccessListener(aVoid -> listener.onSuccess())
-          .addOnFailureListener(listener::onError);
+        }).addOnSuccessListener(aVoid -> {
+            tracker.onTransactionReads(authorId != null && !authorId.isEmpty() ? 1 : 0);
+            tracker.onWrites(authorId != null && !authorId.isEmpty() ? 2 : 1);
+            listener.onSuccess();
+        }).addOnFailureListener(e -> fail(tracker, e, listener::onError));
     }
 
     public void updateUserScore(String userId, int points) {
         if (userId == null) return;
-        db.collection(COL_USERS).document(userId).update("score", FieldValue.increment(points));
+        RepositoryMetrics.Tracker tracker = track("updateUserScore");
+        db.collection(COL_USERS).document(userId).update("score", FieldValue.increment(points))
+                .addOnSuccessListener(aVoid -> tracker.onWrites(1))
+                .addOnFailureListener(e -> tracker.onError());
     }
 
     public void incrementUserScore(String userId, int points) {
@@ -73,37 +138,116 @@ public class FirestoreRepository {
     }
 
     public void addIncident(Incident incident, OnFirestoreTaskComplete listener) {
+        incident.setGeohash(GeoHash.encode(incident.getLatitude(), incident.getLongitude(), GeoHash.STORED_PRECISION));
+        RepositoryMetrics.Tracker tracker = track("addIncident");
         db.collection(COL_INCIDENTS).add(incident)
                 .addOnSuccessListener(ref -> {
+                    tracker.onWrites(1);
                     incident.setId(ref.getId());
                     listener.onSuccess();
                 })
-                .addOnFailureListener(listener::onError);
+                .addOnFailureListener(e -> fail(tracker, e, listener::onError));
+    }
+
+    /** Identifiant d'un nouvel incident, généré localement (aucun aller-retour réseau). */
+    public static String newIncidentId() {
+        return FirebaseFirestore.getInstance().collection(COL_INCIDENTS).document().getId();
     }
 
+    /**
+     * Publie en une transaction des signalements dont l'identifiant est déjà attribué (outbox),
+     * avec les points de leurs auteurs. Un signalement déjà présent est ignoré : rejouer un lot
+     * après une coupure ne crée ni doublon ni points en double.
+     */
+    public Task<Void> commitOutboxIncidents(List<Incident> incidents) {
+        RepositoryMetrics.Tracker tracker = track("commitOutboxIncidents");
+        int[] writes = new int[1];
+        Task<Void> task = db.runTransaction(transaction -> {
+            List<Incident> missing = new ArrayList<>();
+            for (Incident inc : incidents) {
+                if (!transaction.get(db.collection(COL_INCIDENTS).document(inc.getId())).exists()) missing.add(inc);
+            }
+
+            Map<String, Integer> points = new HashMap<>();
+            for (Incident inc : missing) {
+                inc.setGeohash(GeoHash.encode(inc.getLatitude(), inc.getLongitude(), GeoHash.STORED_PRECISION));
+                inc.setUpdatedAt(null);
+                transaction.set(db.collection(COL_INCIDENTS).document(inc.getId()), inc);
+                Integer current = points.get(inc.getIdUtilisateur());
+                points.put(inc.getIdUtilisateur(), (current != null ? current : 0) + INCIDENT_SCORE_POINTS);
+            }
+            for (Map.Entry<String, Integer> e : points.entrySet()) {
+                transaction.update(db.collection(COL_USERS).document(e.getKey()), "score", FieldValue.increment(e.getValue()));
+            }
+            writes[0] = missing.size() + points.size();
+            return null;
+        });
+        return task.addOnSuccessListener(aVoid -> {
+            tracker.onTransactionReads(incidents.size());
+            tracker.onWrites(writes[0]);
+        }).addOnFailureListener(e -> tracker.onError());
+    }
+
+    /** Rattache à un incident déjà publié la photo envoyée après coup. */
+    public Task<Void> setIncidentPhotoUrl(String incidentId, String photoUrl) {
+        RepositoryMetrics.Tracker tracker = track("setIncidentPhotoUrl");
+        return db.collection(COL_INCIDENTS).document(incidentId)
+                .update("photoUrl", photoUrl, "updatedAt", FieldValue.serverTimestamp())
+                .addOnSuccessListener(aVoid -> tracker.onWrites(1))
+                .addOnFailureListener(e -> tracker.onError());
+    }
+
+    /**
+     * Enregistre les champs modifiables depuis l'écran d'édition. Les autres (statut, compteurs,
+     * auteur) ne sont pas réécrits : ils ont pu changer côté serveur depuis l'ouverture du formulaire.
+     */
     public void updateIncidentDetails(Incident incident, OnFirestoreTaskComplete listener) {
         if (incident.getId() == null) {
             listener.onError(new Exception("ID de l'incident manquant pour la mise à jour"));
             return;
         }
-        db.collection(COL_INCIDENTS).document(incident.getId()).set(incident)
-                .addOnSuccessListener(aVoid -> listener.onSuccess())
-                .addOnFailureListener(listener::onError);
+        incident.setGeohash(GeoHash.encode(incident.getLatitude(), incident.getLongitude(), GeoHash.STORED_PRECISION));
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("description", incident.getDescription());
+        fields.put("idCategorie", incident.getIdCategorie());
+        fields.put("nomCategorie", incident.getNomCategorie());
+        fields.put("latitude", incident.getLatitude());
+        fields.put("longitude", incident.getLongitude());
+        fields.put("geohash", incident.getGeohash());
+        fields.put("photoUrl", incident.getPhotoUrl());
+        // Horodatage serveur, pour que la synchronisation voie la modification
+        fields.put("updatedAt", FieldValue.serverTimestamp());
+        RepositoryMetrics.Tracker tracker = track("updateIncidentDetails");
+        db.collection(COL_INCIDENTS).document(incident.getId()).update(fields)
+                .addOnSuccessListener(aVoid -> {
+                    tracker.onWrites(1);
+                    listener.onSuccess();
+                })
+                .addOnFailureListener(e -> fail(tracker, e, listener::onError));
     }
 
     public void addNotification(NotificationApp notification) {
-        db.collection(COL_NOTIFS).add(notification);
+        RepositoryMetrics.Tracker tracker = track("addNotification");
+        db.collection(COL_NOTIFS).add(notification)
+                .addOnSuccessListener(ref -> tracker.onWrites(1))
+                .addOnFailureListener(e -> tracker.onError());
     }
 
     public void addOfficialAlert(NotificationApp alert, OnFirestoreTaskComplete listener) {
+        RepositoryMetrics.Tracker tracker = track("addOfficialAlert");
         db.collection(COL_OFFICIAL_ALERTS).add(alert)
-                .addOnSuccessListener(aVoid -> listener.onSuccess())
-                .addOnFailureListener(listener::onError);
+                .addOnSuccessListener(ref -> {
+                    tracker.onWrites(1);
+                    listener.onSuccess();
+                })
+                .addOnFailureListener(e -> fail(tracker, e, listener::onError));
     }
 
     public void addComment(Comment comment, OnFirestoreTaskComplete listener) {
         DocumentReference incidentRef = db.collection(COL_INCIDENTS).document(comment.getIdIncident());
         DocumentReference commentRef = incidentRef.collection(COL_COMMENTS).document();
+        RepositoryMetrics.Tracker tracker = track("addComment");
+        int[] writes = new int[1];
 
         db.runTransaction(transaction -> {
                     DocumentSnapshot incidentSnap = transaction.get(incidentRef);
@@ -111,8 +255,9 @@ public class FirestoreRepository {
                     String categoryName = incidentSnap.getString("nomCategorie");
                     if (categoryName == null) categoryName = "Incident";
 
-                    transaction.update(incidentRef, "commentsCount", FieldValue.increment(1));
+                    ShardedCounter.increment(transaction, incidentRef, ShardedCounter.FIELD_COMMENTS, 1);
                     transaction.set(commentRef, comment);
+                    writes[0] = 2;
 
                     if (authorId != null && !comment.getIdUtilisateur().equals(authorId)) {
                         String senderName = comment.getNomUtilisateur() != null ? comment.getNomUtilisateur() : "Un citoyen";
@@ -125,144 +270,495 @@ public class FirestoreRepository {
                         notif.setIdIncidentSource(comment.getIdIncident());
                         notif.setNomExpediteur(senderName);
                         transaction.set(db.collection(COL_NOTIFS).document(), notif);
+                        writes[0]++;
                     }
 
                     return null;
-                }).addOnSuccessListener(aVoid -> listener.onSuccess())
-                .addOnFailureListener(listener::onError);
+                }).addOnSuccessListener(aVoid -> {
+                    tracker.onTransactionReads(1);
+                    tracker.onWrites(writes[0]);
+                    listener.onSuccess();
+                })
+                .addOnFailureListener(e -> fail(tracker, e, listener::onError));
     }
 
     public ListenerRegistration getIncidentsRealtime(OnDataLoadListener listener) {
-        return db.collection(COL_INCIDENTS).orderBy("dateSignalement", Query.Direction.DESCENDING).limit(50)
-                .addSnapshotListener((snapshots, e) -> {
-                    if (e != null) { listener.onError(e); return; }
+        return getIncidentsRealtime(LIVE_INCIDENTS_LIMIT, listener);
+    }
+
+    /**
+     * Écoute en temps réel les {@code limit} incidents les plus récents (tête du fil).
+     * L'écoute est partagée entre tous les écrans qui demandent la même limite : ses lectures sont
+     * comptées sous RepositoryMetrics.SHARED_SCREEN, chaque écran y compte son abonnement.
+     */
+    public ListenerRegistration getIncidentsRealtime(int limit, OnDataLoadListener listener) {
+        Query query = feedQuery().limit(limit);
+        RepositoryMetrics.Tracker subscription = track("incidentsRealtime");
+        return subscription.wrap(SharedQueryRegistry.getInstance().subscribe("incidents/feed?limit=" + limit,
+                sink -> listenKeyed(RepositoryMetrics.getInstance().start(RepositoryMetrics.SHARED_SCREEN, "incidentsRealtime"),
+                        query, FirestoreRepository::toIncident, sink),
+                new OnListChangedListener<Incident>() {
+            @Override
+            public void onListChanged(List<Incident> items, List<KeyedSnapshotList.Change> changes) {
+                subscription.onSharedResult();
+                listener.onIncidentsLoaded(items);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                subscription.onError();
+                listener.onError(e);
+            }
+        }));
+    }
+
+    /**
+     * Charge (une seule fois) la page d'incidents qui suit {@code after} dans le fil.
+     * Le curseur (dateSignalement, id) garantit un ordre stable même à date égale.
+     */
+    public void getIncidentsPage(Incident after, int pageSize, OnDataLoadListener listener) {
+        Query query = feedQuery();
+        if (after != null) {
+            query = query.startAfter(after.getDateSignalement(), after.getId());
+        }
+        boolean background = offMainThreadSnapshots;
+        Executor executor = background ? AppExecutors.getInstance().snapshotIO() : AppExecutors.getInstance().mainThread();
+        RepositoryMetrics.Tracker tracker = track("incidentsPage");
+        query.limit(pageSize).get()
+                .addOnSuccessListener(executor, snaps -> {
+                    tracker.onQuerySnapshot(snaps);
                     List<Incident> list = new ArrayList<>();
-                    if (snapshots != null) {
-                        for (DocumentSnapshot doc : snapshots.getDocuments()) {
-                            Incident inc = doc.toObject(Incident.class);
-                            if (inc != null) { inc.setId(doc.getId()); list.add(inc); }
+                    for (DocumentSnapshot doc : snaps.getDocuments()) {
+                        Incident inc = doc.toObject(Incident.class);
+                        if (inc != null) { inc.setId(doc.getId()); list.add(inc); }
+                    }
+                    deliver(background, () -> listener.onIncidentsLoaded(list));
+                })
+                .addOnFailureListener(e -> fail(tracker, e, listener::onError));
+    }
+
+    /**
+     * Charge les incidents situés dans {@code bounds} (zone visible de la carte).
+     * Les plages de geohash sont lues en parallèle, chacune page par page jusqu'à épuisement :
+     * une zone dense est chargée en entier, pas tronquée. Les résultats hors zone
+     * (les cellules débordent du rectangle) sont écartés côté client.
+     */
+    public void getIncidentsInBounds(LatLngBounds bounds, OnDataLoadListener listener) {
+        List<String[]> ranges = GeoHash.queryRanges(bounds.southwest.latitude, bounds.southwest.longitude,
+                bounds.northeast.latitude, bounds.northeast.longitude);
+        List<Task<List<DocumentSnapshot>>> tasks = new ArrayList<>(ranges.size());
+        RepositoryMetrics.Tracker tracker = track("incidentsInBounds");
+        for (String[] range : ranges) {
+            Query query = db.collection(COL_INCIDENTS).orderBy("geohash").endAt(range[1]);
+            tasks.add(loadGeohashRange(query, query.startAt(range[0]), new ArrayList<>(), tracker));
+        }
+
+        boolean background = offMainThreadSnapshots;
+        Executor executor = background ? AppExecutors.getInstance().snapshotIO() : AppExecutors.getInstance().mainThread();
+        Tasks.<List<DocumentSnapshot>>whenAllSuccess(tasks)
+                .addOnSuccessListener(executor, results -> {
+                    List<Incident> list = new ArrayList<>();
+                    Set<String> seen = new HashSet<>();
+                    for (List<DocumentSnapshot> docs : results) {
+                        for (DocumentSnapshot doc : docs) {
+                            if (!seen.add(doc.getId())) continue;
+                            Incident inc = toIncident(doc);
+                            if (inc != null && bounds.contains(inc.getPosition())) list.add(inc);
                         }
                     }
-                    listener.onIncidentsLoaded(list);
-                });
+                    deliver(background, () -> listener.onIncidentsLoaded(list));
+                })
+                .addOnFailureListener(e -> fail(tracker, e, listener::onError));
     }
 
-    public void getMyIncidents(String userId, OnDataLoadListener listener) {
-        db.collection(COL_INCIDENTS)
-                .whereEqualTo("idUtilisateur", userId)
-                .orderBy("dateSignalement", Query.Direction.DESCENDING)
+    /**
+     * Lit une plage de geohash par pages de {@link #VIEWPORT_RANGE_LIMIT}, chaque page reprenant
+     * après le dernier document de la précédente, jusqu'à une page incomplète.
+     */
+    private Task<List<DocumentSnapshot>> loadGeohashRange(Query range, Query page, List<DocumentSnapshot> docs,
+                                                          RepositoryMetrics.Tracker tracker) {
+        return page.limit(VIEWPORT_RANGE_LIMIT).get().continueWithTask(task -> {
+            if (!task.isSuccessful()) return Tasks.forException(task.getException());
+            QuerySnapshot snaps = task.getResult();
+            tracker.onQuerySnapshot(snaps);
+            docs.addAll(snaps.getDocuments());
+            if (snaps.size() < VIEWPORT_RANGE_LIMIT) return Tasks.forResult(docs);
+            DocumentSnapshot last = snaps.getDocuments().get(snaps.size() - 1);
+            return loadGeohashRange(range, range.startAfter(last), docs, tracker);
+        });
+    }
+
+    /**
+     * Page d'incidents modifiés après le curseur ({@code since}, {@code afterId}), dans l'ordre croissant
+     * de (updatedAt, id), pour la synchronisation. Sans {@code afterId}, la page part de {@code since} exclu.
+     * L'id départage les incidents écrits dans le même lot, qui partagent leur updatedAt : une page pleine
+     * de ces incidents ne bloque pas la suite. Le listener reçoit le curseur du dernier document lu
+     * (null si la page est vide) et si la page était pleine. Le résultat est livré sur {@code executor}.
+     */
+    public void getIncidentsUpdatedSince(Timestamp since, String afterId, int limit, Executor executor,
+                                         OnSyncPageLoadedListener listener) {
+        RepositoryMetrics.Tracker tracker = track("incidentsUpdatedSince");
+        Query query = db.collection(COL_INCIDENTS)
+                .orderBy("updatedAt", Query.Direction.ASCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.ASCENDING);
+        query = afterId != null ? query.startAfter(since, afterId) : query.whereGreaterThan("updatedAt", since);
+        query.limit(limit)
                 .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
+                .addOnSuccessListener(executor, snaps -> {
+                    tracker.onQuerySnapshot(snaps);
                     List<Incident> list = new ArrayList<>();
-                    for (DocumentSnapshot doc : queryDocumentSnapshots) {
-                        Incident incident = doc.toObject(Incident.class);
-                        if (incident != null) {
-                            incident.setId(doc.getId());
-                            list.add(incident);
-                        }
+                    for (DocumentSnapshot doc : snaps.getDocuments()) {
+                        Incident inc = toIncident(doc);
+                        if (inc != null) list.add(inc);
                     }
-                    listener.onIncidentsLoaded(list);
+                    DocumentSnapshot last = snaps.isEmpty() ? null : snaps.getDocuments().get(snaps.size() - 1);
+                    listener.onPageLoaded(list, last != null ? last.getTimestamp("updatedAt") : null,
+                            last != null ? last.getId() : null, snaps.size() == limit);
+                })
+                .addOnFailureListener(executor, e -> fail(tracker, e, listener::onError));
+    }
+
+    /**
+     * Identifiants des incidents supprimés après {@code since} (marqueurs deleted_incidents écrits
+     * par la fonction onIncidentDeleted), livrés sur {@code executor}. Le listener reçoit aussi la date la plus récente.
+     */
+    public void getDeletedIncidentsSince(Date since, Executor executor, OnTombstonesLoadedListener listener) {
+        RepositoryMetrics.Tracker tracker = track("deletedIncidentsSince");
+        db.collection(COL_DELETED_INCIDENTS)
+                .whereGreaterThan("deletedAt", since)
+                .orderBy("deletedAt", Query.Direction.ASCENDING)
+                .get()
+                .addOnSuccessListener(executor, snaps -> {
+                    tracker.onQuerySnapshot(snaps);
+                    List<String> ids = new ArrayList<>();
+                    Date latest = since;
+                    for (DocumentSnapshot doc : snaps.getDocuments()) {
+                        ids.add(doc.getId());
+                        Date deletedAt = doc.getDate("deletedAt");
+                        if (deletedAt != null && deletedAt.after(latest)) latest = deletedAt;
+                    }
+                    listener.onTombstonesLoaded(ids, latest);
+                })
+                .addOnFailureListener(executor, e -> fail(tracker, e, listener::onError));
+    }
+
+    private Query feedQuery() {
+        return db.collection(COL_INCIDENTS)
+                .orderBy("dateSignalement", Query.Direction.DESCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING);
+    }
+
+    public void getMyIncidents(String userId, OnDataLoadListener listener) {
+        getMyIncidents(userId, SourcePolicy.STALE_WHILE_REVALIDATE, listener);
+    }
+
+    /**
+     * Incidents publiés par {@code userId}, du plus récent au plus ancien.
+     * Avec STALE_WHILE_REVALIDATE, le listener peut être appelé deux fois (cache puis serveur).
+     */
+    public void getMyIncidents(String userId, SourcePolicy policy, OnDataLoadListener listener) {
+        Query query = db.collection(COL_INCIDENTS)
+                .whereEqualTo("idUtilisateur", userId)
+                .orderBy("dateSignalement", Query.Direction.DESCENDING);
+        fetchQuery("myIncidents", query, policy, new SnapshotCallback<QuerySnapshot>() {
+            @Override
+            public void onResult(QuerySnapshot snapshot) {
+                List<Incident> list = new ArrayList<>();
+                for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                    Incident incident = toIncident(doc);
+                    if (incident != null) list.add(incident);
+                }
+                listener.onIncidentsLoaded(list);
+            }
+
+            @Override
+            public void onError(Exception e) { listener.onError(e); }
+        });
+    }
+
+    /**
+     * Écoute les {@code limit} commentaires les plus récents, dans l'ordre chronologique.
+     * Les plus anciens se chargent à la demande avec {@link #getCommentsPage}.
+     */
+    public ListenerRegistration getCommentsRealtime(String incidentId, int limit, OnListChangedListener<Comment> listener) {
+        return listenKeyed("commentsRealtime", commentsQuery(incidentId).limitToLast(limit), FirestoreRepository::toComment, listener);
+    }
+
+    /**
+     * Charge la page de commentaires précédant {@code before} (endBefore(datePublication, id)),
+     * dans l'ordre chronologique.
+     */
+    public void getCommentsPage(String incidentId, Comment before, int pageSize, OnCommentsLoadedListener listener) {
+        Query query = commentsQuery(incidentId);
+        if (before != null) {
+            query = query.endBefore(before.getDatePublication(), before.getId());
+        }
+        boolean background = offMainThreadSnapshots;
+        Executor executor = background ? AppExecutors.getInstance().snapshotIO() : AppExecutors.getInstance().mainThread();
+        RepositoryMetrics.Tracker tracker = track("commentsPage");
+        query.limitToLast(pageSize).get()
+                .addOnSuccessListener(executor, snaps -> {
+                    tracker.onQuerySnapshot(snaps);
+                    List<Comment> list = new ArrayList<>();
+                    for (DocumentSnapshot doc : snaps.getDocuments()) list.add(toComment(doc));
+                    deliver(background, () -> listener.onCommentsLoaded(list));
                 })
-                .addOnFailureListener(listener::onError);
+                .addOnFailureListener(e -> fail(tracker, e, listener::onError));
     }
 
-    public ListenerRegistration getCommentsRealtime(String incidentId, OnCommentsLoadedListener listener) {
+    private Query commentsQuery(String incidentId) {
         return db.collection(COL_INCIDENTS).document(incidentId).collection(COL_COMMENTS)
                 .orderBy("datePublication", Query.Direction.ASCENDING)
-                .addSnapshotListener((value, error) -> {
-                    if (error != null) { listener.onError(error); return; }
-                    List<Comment> list = new ArrayList<>();
-                    if (value != null) {
-                        for (DocumentSnapshot doc : value.getDocuments()) {
-                            Comment c = doc.toObject(Comment.class);
-                            if (c != null) { c.setId(doc.getId()); list.add(c); }
-                        }
-                    }
-                    listener.onCommentsLoaded(list);
-                });
+                .orderBy(FieldPath.documentId(), Query.Direction.ASCENDING);
     }
 
     public void getUser(String uid, OnUserLoadedListener listener) {
-        db.collection(COL_USERS).document(uid).get()
-                .addOnSuccessListener(doc -> {
+        getUser(uid, SourcePolicy.STALE_WHILE_REVALIDATE, listener);
+    }
+
+    /**
+     * Charge un profil en passant par UserCache : réponse immédiate si le profil est en cache,
+     * et un seul aller-retour réseau pour tous les appels concurrents sur le même uid.
+     * Si une version plus fraîche arrive ensuite (STALE_WHILE_REVALIDATE), ces appels la reçoivent aussi.
+     */
+    public void getUser(String uid, SourcePolicy policy, OnUserLoadedListener listener) {
+        UserCache cache = UserCache.getInstance();
+        Utilisateur cached = policy != SourcePolicy.SERVER_ONLY ? cache.getFresh(uid) : null;
+        if (cached != null) {
+            listener.onUserLoaded(cached);
+            return;
+        }
+        if (!cache.joinInFlight(uid, listener)) return;
+
+        fetchDocument("user", db.collection(COL_USERS).document(uid), policy, new SnapshotCallback<DocumentSnapshot>() {
+            private List<OnUserLoadedListener> delivered;
+
+            @Override
+            public void onResult(DocumentSnapshot doc) {
+                Utilisateur user = doc.exists() ? doc.toObject(Utilisateur.class) : null;
+                if (user != null) user.setId(doc.getId());
+                if (delivered == null) {
+                    if (user != null) delivered = cache.completeInFlight(uid, user);
+                    else cache.failInFlight(uid, new Exception("Profil inexistant dans la collection " + COL_USERS));
+                } else if (user != null) {
+                    cache.put(user);
+                    for (OnUserLoadedListener l : delivered) l.onUserLoaded(UserCache.copy(user));
+                }
+            }
+
+            @Override
+            public void onError(Exception e) { cache.failInFlight(uid, e); }
+        });
+    }
+
+    /**
+     * Écoute le document de l'utilisateur connecté pour garder son profil en cache à jour
+     * (nom, photo, score). À appeler une fois après la connexion.
+     */
+    public void watchCurrentUser(String uid) {
+        UserCache cache = UserCache.getInstance();
+        if (uid == null || cache.isWatching(uid)) return;
+        RepositoryMetrics.Tracker tracker = track("watchCurrentUser");
+        ListenerRegistration registration = db.collection(COL_USERS).document(uid)
+                .addSnapshotListener((doc, e) -> {
+                    if (e != null) {
+                        // Écoute terminée par Firestore : le profil en cache doit de nouveau périmer
+                        tracker.onError();
+                        cache.onWatchFailed(uid);
+                        return;
+                    }
+                    if (doc == null) return;
+                    tracker.onDocumentSnapshot(doc);
                     if (doc.exists()) {
                         Utilisateur user = doc.toObject(Utilisateur.class);
-                        if (user != null) user.setId(doc.getId());
-                        listener.onUserLoaded(user);
-                    } else { listener.onError(new Exception("Profil inexistant dans la collection " + COL_USERS)); }
-                }).addOnFailureListener(listener::onError);
+                        if (user != null) {
+                            user.setId(doc.getId());
+                            cache.put(user);
+                        }
+                    } else {
+                        cache.invalidate(uid);
+                    }
+                });
+        cache.setWatch(uid, tracker.wrap(registration));
+    }
+
+    /**
+     * Synchronise LikeIndex avec l'index des likes de l'utilisateur (utilisateurs/{uid}/likes).
+     */
+    public void watchCurrentUserLikes(String uid) {
+        LikeIndex index = LikeIndex.getInstance();
+        if (uid == null || index.isWatching(uid)) return;
+        RepositoryMetrics.Tracker tracker = track("watchCurrentUserLikes");
+        ListenerRegistration registration = db.collection(COL_USERS).document(uid).collection(COL_LIKES)
+                .addSnapshotListener((snapshot, e) -> {
+                    if (e != null) tracker.onError();
+                    if (e != null || snapshot == null) return;
+                    tracker.onQuerySnapshot(snapshot);
+                    List<String> ids = new ArrayList<>(snapshot.size());
+                    for (DocumentSnapshot doc : snapshot.getDocuments()) ids.add(doc.getId());
+                    index.replaceAll(ids);
+                });
+        index.setWatch(uid, tracker.wrap(registration));
     }
 
     public void getIncident(String incidentId, OnIncidentLoadedListener listener) {
-        db.collection(COL_INCIDENTS).document(incidentId).get()
-                .addOnSuccessListener(doc -> {
-                    if (doc.exists()) {
-                        Incident inc = doc.toObject(Incident.class);
-                        if (inc != null) inc.setId(doc.getId());
-                        listener.onIncidentLoaded(inc);
-                    } else { listener.onError(new Exception("Signalement introuvable")); }
-                }).addOnFailureListener(listener::onError);
+        getIncident(incidentId, SourcePolicy.STALE_WHILE_REVALIDATE, listener);
     }
 
-    public ListenerRegistration getNotifications(String userId, OnNotificationsLoadedListener listener) {
-        return db.collection(COL_NOTIFS)
+    /**
+     * Charge un incident (liens depuis les notifications, édition). Avec STALE_WHILE_REVALIDATE,
+     * la copie en cache s'affiche sans attendre le réseau et le listener est rappelé si elle a changé.
+     */
+    public void getIncident(String incidentId, SourcePolicy policy, OnIncidentLoadedListener listener) {
+        fetchDocument("incident", db.collection(COL_INCIDENTS).document(incidentId), policy,
+                new SnapshotCallback<DocumentSnapshot>() {
+            @Override
+            public void onResult(DocumentSnapshot doc) {
+                if (doc.exists()) listener.onIncidentLoaded(toIncident(doc));
+                else listener.onError(new Exception("Signalement introuvable"));
+            }
+
+            @Override
+            public void onError(Exception e) { listener.onError(e); }
+        });
+    }
+
+    public ListenerRegistration getNotifications(String userId, OnListChangedListener<NotificationApp> listener) {
+        Query query = db.collection(COL_NOTIFS)
                 .whereEqualTo("idDestinataire", userId)
                 .orderBy("date", Query.Direction.DESCENDING)
-                .limit(30)
-                .addSnapshotListener((snapshots, e) -> {
-                    if (e != null) {
-                        listener.onError(e);
-                        return;
-                    }
-                    if (snapshots != null) {
-                        listener.onNotificationsLoaded(snapshots.toObjects(NotificationApp.class));
+                .limit(30);
+        return listenKeyed("notifications", query, doc -> doc.toObject(NotificationApp.class), listener);
+    }
+
+    /**
+     * Nombre de notifications non lues (agrégat count() : une lecture facturée par tranche
+     * de 1000 entrées d'index, sans transférer les documents). Sert au badge de navigation.
+     */
+    public void countUnreadNotifications(String userId, OnCountLoadedListener listener) {
+        RepositoryMetrics.Tracker tracker = track("unreadNotificationsCount");
+        unreadNotificationsQuery(userId).count().get(AggregateSource.SERVER)
+                .addOnSuccessListener(snap -> {
+                    tracker.onAggregateRead(snap.getCount());
+                    listener.onCountLoaded(snap.getCount());
+                })
+                .addOnFailureListener(e -> fail(tracker, e, listener::onError));
+    }
+
+    /**
+     * Marque comme lues toutes les notifications non lues de l'utilisateur,
+     * par WriteBatch de {@value #MAX_BATCH_WRITES} mises à jour au plus.
+     */
+    public void markNotificationsRead(String userId, OnFirestoreTaskComplete listener) {
+        RepositoryMetrics.Tracker tracker = track("markNotificationsRead");
+        unreadNotificationsQuery(userId).get()
+                .continueWithTask(task -> {
+                    QuerySnapshot snaps = task.getResult();
+                    tracker.onQuerySnapshot(snaps);
+                    List<Task<Void>> commits = new ArrayList<>();
+                    WriteBatch batch = db.batch();
+                    int pending = 0;
+                    for (DocumentSnapshot doc : snaps.getDocuments()) {
+                        batch.update(doc.getReference(), "lu", true);
+                        if (++pending == MAX_BATCH_WRITES) {
+                            commits.add(batch.commit());
+                            batch = db.batch();
+                            pending = 0;
+                        }
                     }
-                });
+                    if (pending > 0) commits.add(batch.commit());
+                    tracker.onWrites(snaps.size());
+                    return Tasks.whenAll(commits);
+                })
+                .addOnSuccessListener(v -> listener.onSuccess())
+                .addOnFailureListener(e -> fail(tracker, e, listener::onError));
+    }
+
+    private Query unreadNotificationsQuery(String userId) {
+        return db.collection(COL_NOTIFS)
+                .whereEqualTo("idDestinataire", userId)
+                .whereEqualTo("lu", false);
     }
 
     public void getCategories(OnCategoriesLoadedListener listener) {
+        RepositoryMetrics.Tracker tracker = track("categories");
         db.collection(COL_CATEGORIES).orderBy("nomCategorie").get()
                 .addOnSuccessListener(snaps -> {
+                    tracker.onQuerySnapshot(snaps);
                     if (snaps != null) listener.onCategoriesLoaded(snaps.toObjects(Categorie.class));
-                }).addOnFailureListener(listener::onError);
-    }
-
-    public void deleteIncident(String incidentId, String photoUrl, OnFirestoreTaskComplete listener) {
-        if (photoUrl != null && !photoUrl.isEmpty()) {
-            FirebaseStorage.getInstance().getReferenceFromUrl(photoUrl).delete()
-                    .addOnCompleteListener(task -> db.collection(COL_INCIDENTS).document(incidentId).delete()
-                            .addOnSuccessListener(a -> listener.onSuccess())
-                            .addOnFailureListener(listener::onError));
-        } else {
-            db.collection(COL_INCIDENTS).document(incidentId).delete()
-                    .addOnSuccessListener(a -> listener.onSuccess())
-                    .addOnFailureListener(listener::onError);
-        }
+                }).addOnFailureListener(e -> fail(tracker, e, listener::onError));
     }
 
-    public void toggleLike(String incidentId, String userId) {
-        DocumentReference ref = db.collection(COL_INCIDENTS).document(incidentId);
-        DocumentReference userLikerRef = db.collection(COL_USERS).document(userId);
+    /**
+     * Vérifie la version du catalogue (un seul document lu) et ne recharge les catégories
+     * que si elle a changé. Le listener n'est appelé que lorsqu'un nouveau catalogue est en cache.
+     */
+    public void refreshCategoriesIfStale(Context context, OnCategoriesLoadedListener listener) {
+        Context appContext = context.getApplicationContext();
+        RepositoryMetrics.Tracker tracker = track("categoriesVersion");
+        db.collection(COL_META).document(DOC_META_CATEGORIES).get()
+                .addOnSuccessListener(meta -> {
+                    tracker.onDocumentSnapshot(meta);
+                    Long remote = meta.exists() ? meta.getLong("version") : null;
+                    long remoteVersion = remote != null ? remote : 0;
+                    if (remoteVersion == CategoryCache.getVersion(appContext)
+                            && !CategoryCache.read(appContext).isEmpty()) return;
+
+                    getCategories(new OnCategoriesLoadedListener() {
+                        @Override
+                        public void onCategoriesLoaded(List<Categorie> categories) {
+                            CategoryCache.write(appContext, categories, remoteVersion);
+                            listener.onCategoriesLoaded(categories);
+                        }
 
-        db.runTransaction(transaction -> {
-            DocumentSnapshot snapshot = transaction.get(ref);
-            DocumentSnapshot likerSnap = transaction.get(userLikerRef);
+                        @Override
+                        public void onError(Exception e) { listener.onError(e); }
+                    });
+                }).addOnFailureListener(e -> fail(tracker, e, listener::onError));
+    }
 
-            String authorId = snapshot.getString("idUtilisateur");
-            String likerName = likerSnap.getString("nom");
-            if (likerName == null) likerName = "Un utilisateur";
+    /**
+     * Supprime le document incident. Les commentaires, likes, notifications et photos
+     * qui le référencent sont nettoyés côté serveur (fonction onIncidentDeleted).
+     */
+    public void deleteIncident(String incidentId, OnFirestoreTaskComplete listener) {
+        RepositoryMetrics.Tracker tracker = track("deleteIncident");
+        db.collection(COL_INCIDENTS).document(incidentId).delete()
+                .addOnSuccessListener(a -> {
+                    tracker.onWrites(1);
+                    listener.onSuccess();
+                })
+                .addOnFailureListener(e -> fail(tracker, e, listener::onError));
+    }
 
-            List<String> likedBy = (List<String>) snapshot.get("likedBy");
-            if (likedBy == null) likedBy = new ArrayList<>();
+    /**
+     * Enregistre l'état final du like de {@code userId} sur un incident (appelé par LikeManager).
+     * Le like est un document de l'index utilisateurs/{uid}/likes : le document incident ne garde
+     * que le compteur likesCount, alimenté via ShardedCounter. Seul le document like est lu :
+     * l'auteur et le nom de l'expéditeur sont fournis par l'appelant.
+     */
+    public void setLike(String incidentId, String authorId, String userId, String likerName, boolean liked,
+                        OnFirestoreTaskComplete listener) {
+        DocumentReference ref = db.collection(COL_INCIDENTS).document(incidentId);
+        DocumentReference likeRef = db.collection(COL_USERS).document(userId).collection(COL_LIKES).document(incidentId);
+        RepositoryMetrics.Tracker tracker = track("setLike");
+        int[] writes = new int[1];
 
-            if (likedBy.contains(userId)) {
-                likedBy.remove(userId);
-                transaction.update(ref, "likedBy", likedBy);
-                transaction.update(ref, "likesCount", FieldValue.increment(-1));
+        db.runTransaction(transaction -> {
+            DocumentSnapshot likeSnap = transaction.get(likeRef);
+            writes[0] = 0;
+            if (likeSnap.exists() == liked) return null;
+            writes[0] = 2;
+
+            if (!liked) {
+                transaction.delete(likeRef);
+                ShardedCounter.increment(transaction, ref, ShardedCounter.FIELD_LIKES, -1);
             } else {
-                likedBy.add(userId);
-                transaction.update(ref, "likedBy", likedBy);
-                transaction.update(ref, "likesCount", FieldValue.increment(1));
+                Map<String, Object> like = new HashMap<>();
+                like.put("incidentId", incidentId);
+                like.put("date", FieldValue.serverTimestamp());
+                transaction.set(likeRef, like);
+                ShardedCounter.increment(transaction, ref, ShardedCounter.FIELD_LIKES, 1);
 
                 if (authorId != null && !userId.equals(authorId)) {
                     NotificationApp notif = new NotificationApp(
@@ -274,23 +770,193 @@ public class FirestoreRepository {
                     notif.setIdIncidentSource(incidentId);
                     notif.setNomExpediteur(likerName);
                     transaction.set(db.collection(COL_NOTIFS).document(), notif);
+                    writes[0]++;
                 }
             }
             return null;
-        });
+        }).addOnSuccessListener(aVoid -> {
+            tracker.onTransactionReads(1);
+            tracker.onWrites(writes[0]);
+            listener.onSuccess();
+        }).addOnFailureListener(e -> fail(tracker, e, listener::onError));
     }
 
     public ListenerRegistration getIncidentListener(String incidentId, OnIncidentLoadedListener listener) {
-        return db.collection(COL_INCIDENTS).document(incidentId)
-                .addSnapshotListener((snapshot, e) -> {
-                    if (e != null) { listener.onError(e); return; }
-                    if (snapshot != null && snapshot.exists()) {
-                        Incident inc = snapshot.toObject(Incident.class);
-                        if (inc != null) {
-                            inc.setId(snapshot.getId());
-                            listener.onIncidentLoaded(inc);
-                        }
-                    }
-                });
+        boolean background = offMainThreadSnapshots;
+        RepositoryMetrics.Tracker tracker = track("incidentListener");
+        EventListener<DocumentSnapshot> handler = (snapshot, e) -> {
+            if (e != null) {
+                tracker.onError();
+                deliver(background, () -> listener.onError(e));
+                return;
+            }
+            tracker.onDocumentSnapshot(snapshot);
+            if (snapshot != null && snapshot.exists()) {
+                Incident inc = toIncident(snapshot);
+                if (inc != null) deliver(background, () -> listener.onIncidentLoaded(inc));
+            }
+        };
+        DocumentReference ref = db.collection(COL_INCIDENTS).document(incidentId);
+        if (background) {
+            return tracker.wrap(ref.addSnapshotListener(AppExecutors.getInstance().newSerialExecutor(), handler));
+        }
+        return tracker.wrap(ref.addSnapshotListener(handler));
+    }
+
+    /** Résultat d'une lecture ponctuelle ; onResult peut être appelé deux fois (STALE_WHILE_REVALIDATE). */
+    private interface SnapshotCallback<S> {
+        void onResult(S snapshot);
+        void onError(Exception e);
+    }
+
+    /**
+     * Lecture d'un document selon {@code policy}. Un document absent du cache
+     * (ou connu comme inexistant) compte comme un défaut de cache.
+     */
+    private void fetchDocument(String operation, DocumentReference ref, SourcePolicy policy,
+                               SnapshotCallback<DocumentSnapshot> callback) {
+        RepositoryMetrics.Tracker tracker = track(operation);
+        if (policy == SourcePolicy.SERVER_ONLY) {
+            ref.get(Source.SERVER)
+                    .addOnSuccessListener(doc -> {
+                        tracker.onDocumentSnapshot(doc);
+                        callback.onResult(doc);
+                    })
+                    .addOnFailureListener(e -> fail(tracker, e, callback::onError));
+            return;
+        }
+
+        ref.get(Source.CACHE).addOnCompleteListener(cacheTask -> {
+            DocumentSnapshot cached = cacheTask.isSuccessful() && cacheTask.getResult().exists() ? cacheTask.getResult() : null;
+            if (cached != null) {
+                tracker.onDocumentSnapshot(cached);
+                callback.onResult(cached);
+                if (policy != SourcePolicy.STALE_WHILE_REVALIDATE) return;
+            } else if (policy == SourcePolicy.CACHE_ONLY) {
+                fail(tracker, new Exception("Document absent du cache : " + ref.getPath()), callback::onError);
+                return;
+            }
+
+            ref.get(Source.SERVER)
+                    .addOnSuccessListener(fresh -> {
+                        tracker.onDocumentSnapshot(fresh);
+                        if (cached == null || !sameData(cached, fresh)) callback.onResult(fresh);
+                    })
+                    .addOnFailureListener(e -> {
+                        // Version en cache déjà affichée : on la garde
+                        if (cached != null) tracker.onError();
+                        else fail(tracker, e, callback::onError);
+                    });
+        });
+    }
+
+    /**
+     * Lecture d'une requête selon {@code policy}. Un résultat vide en cache compte comme un défaut de cache.
+     */
+    private void fetchQuery(String operation, Query query, SourcePolicy policy, SnapshotCallback<QuerySnapshot> callback) {
+        RepositoryMetrics.Tracker tracker = track(operation);
+        if (policy == SourcePolicy.SERVER_ONLY) {
+            query.get(Source.SERVER)
+                    .addOnSuccessListener(snaps -> {
+                        tracker.onQuerySnapshot(snaps);
+                        callback.onResult(snaps);
+                    })
+                    .addOnFailureListener(e -> fail(tracker, e, callback::onError));
+            return;
+        }
+
+        query.get(Source.CACHE).addOnCompleteListener(cacheTask -> {
+            QuerySnapshot cached = cacheTask.isSuccessful() && !cacheTask.getResult().isEmpty() ? cacheTask.getResult() : null;
+            if (cached != null) {
+                tracker.onQuerySnapshot(cached);
+                callback.onResult(cached);
+                if (policy != SourcePolicy.STALE_WHILE_REVALIDATE) return;
+            } else if (policy == SourcePolicy.CACHE_ONLY) {
+                fail(tracker, new Exception("Requête absente du cache"), callback::onError);
+                return;
+            }
+
+            query.get(Source.SERVER)
+                    .addOnSuccessListener(fresh -> {
+                        tracker.onQuerySnapshot(fresh);
+                        if (cached == null || !sameDocuments(cached, fresh)) callback.onResult(fresh);
+                    })
+                    .addOnFailureListener(e -> {
+                        if (cached != null) tracker.onError();
+                        else fail(tracker, e, callback::onError);
+                    });
+        });
+    }
+
+    private static boolean sameData(DocumentSnapshot a, DocumentSnapshot b) {
+        Map<String, Object> da = a.getData();
+        return b.exists() && da != null && da.equals(b.getData());
+    }
+
+    private static boolean sameDocuments(QuerySnapshot a, QuerySnapshot b) {
+        List<DocumentSnapshot> docsA = a.getDocuments();
+        List<DocumentSnapshot> docsB = b.getDocuments();
+        if (docsA.size() != docsB.size()) return false;
+        for (int i = 0; i < docsA.size(); i++) {
+            if (!docsA.get(i).getId().equals(docsB.get(i).getId()) || !sameData(docsA.get(i), docsB.get(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Attache un listener dont les snapshots alimentent un KeyedSnapshotList.
+     * En mode hors thread UI, la désérialisation se fait sur un exécuteur séquentiel
+     * du pool snapshotIO et seul le résultat final est posté sur le thread principal.
+     */
+    private <T> ListenerRegistration listenKeyed(String operation, Query query, KeyedSnapshotList.Mapper<T> mapper,
+                                                 OnListChangedListener<T> listener) {
+        return listenKeyed(track(operation), query, mapper, listener);
+    }
+
+    private <T> ListenerRegistration listenKeyed(RepositoryMetrics.Tracker tracker, Query query,
+                                                 KeyedSnapshotList.Mapper<T> mapper, OnListChangedListener<T> listener) {
+        KeyedSnapshotList<T> model = new KeyedSnapshotList<>(mapper);
+        boolean background = offMainThreadSnapshots;
+        EventListener<QuerySnapshot> handler = (snapshots, e) -> {
+            if (e != null) {
+                tracker.onError();
+                deliver(background, () -> listener.onError(e));
+                return;
+            }
+            tracker.onQuerySnapshot(snapshots);
+            List<KeyedSnapshotList.Change> changes = model.apply(snapshots);
+            List<T> items = model.snapshot();
+            deliver(background, () -> listener.onListChanged(items, changes));
+        };
+        if (background) {
+            return tracker.wrap(query.addSnapshotListener(AppExecutors.getInstance().newSerialExecutor(), handler));
+        }
+        return tracker.wrap(query.addSnapshotListener(handler));
+    }
+
+    private static Incident toIncident(DocumentSnapshot doc) {
+        Incident inc = doc.toObject(Incident.class);
+        if (inc != null) inc.setId(doc.getId());
+        return inc;
+    }
+
+    private static Comment toComment(DocumentSnapshot doc) {
+        Comment c = doc.toObject(Comment.class);
+        c.setId(doc.getId());
+        return c;
+    }
+
+    private RepositoryMetrics.Tracker track(String operation) {
+        return RepositoryMetrics.getInstance().start(screen, operation);
+    }
+
+    private static void fail(RepositoryMetrics.Tracker tracker, Exception e, Consumer<Exception> onError) {
+        tracker.onError();
+        onError.accept(e);
+    }
+
+    private static void deliver(boolean background, Runnable result) {
+        if (background) AppExecutors.getInstance().mainThread().execute(result);
+        else result.run();
     }
 }
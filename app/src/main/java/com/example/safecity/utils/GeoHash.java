@@ -0,0 +1,129 @@
+package com.example.safecity.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Encodage geohash (base 32) et découpage d'une zone rectangulaire en plages de préfixes.
+ * Les incidents stockent leur geohash : une requête orderBy("geohash").startAt(début).endAt(fin)
+ * par plage suffit alors à couvrir la zone visible de la carte.
+ */
+public final class GeoHash {
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    /** Précision stockée sur les incidents (~4,8 m x 4,8 m). */
+    public static final int STORED_PRECISION = 9;
+
+    /** Nombre maximal de requêtes lancées pour une zone. */
+    public static final int MAX_RANGES = 9;
+
+    private GeoHash() {}
+
+    public static String encode(double latitude, double longitude, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLng = -180, maxLng = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int ch = 0;
+
+        while (hash.length() < precision) {
+            if (evenBit) {
+                double mid = (minLng + maxLng) / 2;
+                if (longitude >= mid) { ch = (ch << 1) | 1; minLng = mid; }
+                else { ch = ch << 1; maxLng = mid; }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) { ch = (ch << 1) | 1; minLat = mid; }
+                else { ch = ch << 1; maxLat = mid; }
+            }
+            evenBit = !evenBit;
+            if (++bit == 5) {
+                hash.append(BASE32.charAt(ch));
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Plages [début, fin] de geohash couvrant le rectangle donné (bornes en degrés).
+     * La précision retenue est la plus fine qui tienne en {@link #MAX_RANGES} cellules ;
+     * les cellules consécutives dans l'ordre des geohash sont fusionnées en une seule plage.
+     * La couverture déborde du rectangle : les résultats doivent être filtrés côté client.
+     */
+    public static List<String[]> queryRanges(double south, double west, double north, double east) {
+        List<String[]> ranges = new ArrayList<>();
+        if (west > east) {
+            // La zone traverse l'antiméridien : deux rectangles
+            ranges.addAll(queryRanges(south, west, north, 180));
+            ranges.addAll(queryRanges(south, -180, north, east));
+            return ranges;
+        }
+
+        int precision = precisionFor(south, west, north, east);
+        double cellHeight = cellHeight(precision);
+        double cellWidth = cellWidth(precision);
+
+        TreeSet<String> cells = new TreeSet<>();
+        for (double lat = south; ; lat += cellHeight) {
+            double clampedLat = Math.min(lat, north);
+            for (double lng = west; ; lng += cellWidth) {
+                double clampedLng = Math.min(lng, east);
+                cells.add(encode(clampedLat, clampedLng, precision));
+                if (clampedLng >= east) break;
+            }
+            if (clampedLat >= north) break;
+        }
+
+        String start = null;
+        String end = null;
+        for (String cell : cells) {
+            if (start != null && cell.equals(successor(end))) {
+                end = cell;
+                continue;
+            }
+            if (start != null) ranges.add(new String[] { start, end + "~" });
+            start = cell;
+            end = cell;
+        }
+        if (start != null) ranges.add(new String[] { start, end + "~" });
+        return ranges;
+    }
+
+    static int precisionFor(double south, double west, double north, double east) {
+        for (int precision = STORED_PRECISION; precision > 1; precision--) {
+            long rows = (long) Math.ceil((north - south) / cellHeight(precision)) + 1;
+            long cols = (long) Math.ceil((east - west) / cellWidth(precision)) + 1;
+            if (rows * cols <= MAX_RANGES) return precision;
+        }
+        return 1;
+    }
+
+    static double cellHeight(int precision) {
+        int latBits = (5 * precision) / 2;
+        return 180.0 / (1L << latBits);
+    }
+
+    static double cellWidth(int precision) {
+        int lngBits = (5 * precision + 1) / 2;
+        return 360.0 / (1L << lngBits);
+    }
+
+    /** Geohash suivant à la même précision, ou null pour le dernier. */
+    private static String successor(String hash) {
+        char[] chars = hash.toCharArray();
+        for (int i = chars.length - 1; i >= 0; i--) {
+            int index = BASE32.indexOf(chars[i]);
+            if (index < BASE32.length() - 1) {
+                chars[i] = BASE32.charAt(index + 1);
+                return new String(chars);
+            }
+            chars[i] = BASE32.charAt(0);
+        }
+        return null;
+    }
+}
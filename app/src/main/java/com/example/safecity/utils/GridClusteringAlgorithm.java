@@ -0,0 +1,167 @@
+package com.example.safecity.utils;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.clustering.Cluster;
+import com.google.maps.android.clustering.ClusterItem;
+import com.google.maps.android.clustering.algo.AbstractAlgorithm;
+import com.google.maps.android.clustering.algo.StaticCluster;
+import com.google.maps.android.geometry.Point;
+import com.google.maps.android.projection.SphericalMercatorProjection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Regroupement en temps linéaire : chaque élément tombe dans une case d'une grille à l'échelle de l'écran
+ * (côté {@code maxDistance} pixels au zoom demandé), et chaque case non vide devient un groupe centré
+ * sur la moyenne de ses éléments. Pas d'arbre ni de recherche de voisins, contrairement à
+ * NonHierarchicalDistanceBasedAlgorithm.
+ * Les groupes sont gardés par niveau de zoom entier (comme PreCachingAlgorithmDecorator) et
+ * oubliés à chaque modification des éléments.
+ */
+public class GridClusteringAlgorithm<T extends ClusterItem> extends AbstractAlgorithm<T> {
+
+    public static final int DEFAULT_GRID_SIZE = 100;
+    // Niveaux de zoom gardés en cache
+    private static final int MAX_CACHED_ZOOMS = 5;
+
+    private final Set<T> items = new LinkedHashSet<>();
+    private int gridSize = DEFAULT_GRID_SIZE;
+    private final Map<Integer, Set<? extends Cluster<T>>> cache =
+            new LinkedHashMap<Integer, Set<? extends Cluster<T>>>(MAX_CACHED_ZOOMS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Set<? extends Cluster<T>>> eldest) {
+                    return size() > MAX_CACHED_ZOOMS;
+                }
+            };
+
+    /** Case de la grille en cours de remplissage. */
+    private static class Cell<T> {
+        final List<T> items = new ArrayList<>();
+        double latSum;
+        double lngSum;
+    }
+
+    @Override
+    public boolean addItem(T item) {
+        synchronized (items) {
+            return invalidateIf(items.add(item));
+        }
+    }
+
+    @Override
+    public boolean addItems(Collection<T> newItems) {
+        synchronized (items) {
+            return invalidateIf(items.addAll(newItems));
+        }
+    }
+
+    @Override
+    public void clearItems() {
+        synchronized (items) {
+            items.clear();
+            cache.clear();
+        }
+    }
+
+    @Override
+    public boolean removeItem(T item) {
+        synchronized (items) {
+            return invalidateIf(items.remove(item));
+        }
+    }
+
+    @Override
+    public boolean removeItems(Collection<T> oldItems) {
+        synchronized (items) {
+            // Retrait un par un : removeAll(List) parcourrait la liste pour chaque élément du Set
+            boolean changed = false;
+            for (T item : oldItems) changed |= items.remove(item);
+            return invalidateIf(changed);
+        }
+    }
+
+    @Override
+    public boolean updateItem(T item) {
+        synchronized (items) {
+            // Même instance, position peut-être modifiée : seul le cache est à refaire
+            return invalidateIf(items.contains(item));
+        }
+    }
+
+    @Override
+    public Set<? extends Cluster<T>> getClusters(float zoom) {
+        int discreteZoom = (int) zoom;
+        synchronized (items) {
+            Set<? extends Cluster<T>> cached = cache.get(discreteZoom);
+            if (cached != null) return cached;
+            Set<? extends Cluster<T>> clusters = Collections.unmodifiableSet(cluster(discreteZoom));
+            cache.put(discreteZoom, clusters);
+            return clusters;
+        }
+    }
+
+    @Override
+    public Collection<T> getItems() {
+        synchronized (items) {
+            return new ArrayList<>(items);
+        }
+    }
+
+    @Override
+    public void setMaxDistanceBetweenClusteredItems(int maxDistance) {
+        synchronized (items) {
+            gridSize = maxDistance;
+            cache.clear();
+        }
+    }
+
+    @Override
+    public int getMaxDistanceBetweenClusteredItems() {
+        return gridSize;
+    }
+
+    private boolean invalidateIf(boolean changed) {
+        if (changed) cache.clear();
+        return changed;
+    }
+
+    private Set<Cluster<T>> cluster(int zoom) {
+        double worldWidth = 256 * Math.pow(2, zoom);
+        SphericalMercatorProjection projection = new SphericalMercatorProjection(worldWidth);
+        // Une case de plus que nécessaire : un point sur le bord du monde garde une clé unique
+        long stride = (long) Math.ceil(worldWidth / gridSize) + 1;
+
+        Map<Long, Cell<T>> cells = new HashMap<>();
+        for (T item : items) {
+            LatLng position = item.getPosition();
+            Point p = projection.toPoint(position);
+            long key = (long) Math.floor(p.x / gridSize) * stride + (long) Math.floor(p.y / gridSize);
+            Cell<T> cell = cells.get(key);
+            if (cell == null) {
+                cell = new Cell<>();
+                cells.put(key, cell);
+            }
+            cell.items.add(item);
+            cell.latSum += position.latitude;
+            cell.lngSum += position.longitude;
+        }
+
+        Set<Cluster<T>> clusters = new HashSet<>(cells.size() * 2);
+        for (Cell<T> cell : cells.values()) {
+            int n = cell.items.size();
+            StaticCluster<T> cluster = new StaticCluster<>(new LatLng(cell.latSum / n, cell.lngSum / n));
+            for (T item : cell.items) cluster.add(item);
+            clusters.add(cluster);
+        }
+        return clusters;
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.safecity.utils;
+
+import com.example.safecity.model.Incident;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.TileOverlay;
+import com.google.android.gms.maps.model.TileOverlayOptions;
+import com.google.maps.android.heatmaps.HeatmapTileProvider;
+import com.google.maps.android.heatmaps.WeightedLatLng;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Vue d'ensemble de la carte aux petits zooms : une carte de chaleur pondérée remplace les marqueurs
+ * et les groupes, qui coûtent cher et n'apprennent rien à l'échelle d'une ville.
+ * Le poids d'un incident combine la gravité de sa catégorie et son ancienneté (demi-vie de 30 jours).
+ * Les poids et les intensités de la heatmap sont calculés sur un exécuteur de fond ; les tuiles
+ * sont dessinées par les threads du SDK Maps. Toutes les méthodes publiques s'appellent sur le thread principal.
+ * Un fournisseur de tuiles n'est jamais modifié une fois affiché (les threads de tuiles le lisent) :
+ * chaque nouvel ensemble de points a son propre fournisseur, et son overlay remplace l'ancien une fois ajouté.
+ * Les poids sont arrondis par paliers : tant que les points et leurs paliers ne changent pas,
+ * un nouvel appel à {@link #show} ne reconstruit rien.
+ */
+public class HeatmapLayerController {
+
+    /** Sous ce zoom, la carte affiche la heatmap au lieu des groupes de marqueurs. */
+    public static final float MAX_HEATMAP_ZOOM = 11f;
+
+    private static final long RECENCY_HALF_LIFE_MS = 30L * 24 * 60 * 60 * 1000;
+    // Poids plancher : un incident ancien reste visible, mais discret
+    private static final double MIN_RECENCY_WEIGHT = 0.1;
+    private static final double DEFAULT_SEVERITY = 0.4;
+    private static final int RADIUS_PX = 40;
+    private static final double OPACITY = 0.7;
+    // Paliers de poids (1/20) : le vieillissement continu ne change le poids qu'à chaque palier franchi
+    private static final int WEIGHT_STEPS = 20;
+    private static final long NO_SIGNATURE = 0;
+
+    private static final Map<String, Double> SEVERITY = new HashMap<>();
+    static {
+        SEVERITY.put(IncidentFilterIndex.normalize("Incendie"), 1.0);
+        SEVERITY.put(IncidentFilterIndex.normalize("Accident"), 0.9);
+        SEVERITY.put(IncidentFilterIndex.normalize("Vol"), 0.6);
+        SEVERITY.put(IncidentFilterIndex.normalize("Panne"), 0.3);
+        SEVERITY.put(IncidentFilterIndex.normalize("Autre"), DEFAULT_SEVERITY);
+    }
+
+    private final GoogleMap map;
+    private final Executor executor = AppExecutors.getInstance().newSerialExecutor();
+    // Overlay affiché et signature des points de son fournisseur, sur le thread principal
+    private TileOverlay overlay;
+    private long overlaySignature = NO_SIGNATURE;
+    private boolean visible = false;
+    private int generation = 0;
+
+    public HeatmapLayerController(GoogleMap map) {
+        this.map = map;
+    }
+
+    public static boolean isHeatmapZoom(float zoom) {
+        return zoom < MAX_HEATMAP_ZOOM;
+    }
+
+    /**
+     * Affiche la heatmap des {@code incidents} (déjà filtrés). Un appel plus récent annule
+     * l'application d'un calcul encore en cours ; des points identiques à ceux affichés ne
+     * reconstruisent rien.
+     */
+    public void show(List<Incident> incidents) {
+        visible = true;
+        final int gen = ++generation;
+        final long shown = overlay != null ? overlaySignature : NO_SIGNATURE;
+        executor.execute(() -> {
+            List<WeightedLatLng> points = new ArrayList<>(incidents.size());
+            long signature = toWeightedPoints(incidents, System.currentTimeMillis(), points);
+            if (points.isEmpty()) {
+                AppExecutors.getInstance().mainThread().execute(() -> {
+                    if (gen == generation) removeOverlay();
+                });
+                return;
+            }
+            if (signature == shown) return;
+            // Construction de l'arbre et des intensités maximales : la partie coûteuse
+            final HeatmapTileProvider provider = new HeatmapTileProvider.Builder()
+                    .weightedData(points)
+                    .radius(RADIUS_PX)
+                    .opacity(OPACITY)
+                    .build();
+            AppExecutors.getInstance().mainThread().execute(() -> {
+                if (gen != generation || !visible) return;
+                // Le nouvel overlay est ajouté avant de retirer l'ancien : pas de carte vide entre les deux
+                TileOverlay previous = overlay;
+                overlay = map.addTileOverlay(new TileOverlayOptions().tileProvider(provider));
+                overlaySignature = signature;
+                if (previous != null) previous.remove();
+            });
+        });
+    }
+
+    /** Retire la heatmap (retour aux groupes de marqueurs). */
+    public void hide() {
+        visible = false;
+        generation++;
+        removeOverlay();
+    }
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    private void removeOverlay() {
+        if (overlay != null) {
+            overlay.remove();
+            overlay = null;
+        }
+        overlaySignature = NO_SIGNATURE;
+    }
+
+    /**
+     * Remplit {@code points} avec les poids arrondis au palier et retourne une signature de
+     * l'ensemble (position et palier de chaque point, dans l'ordre).
+     */
+    private static long toWeightedPoints(List<Incident> incidents, long now, List<WeightedLatLng> points) {
+        long signature = 1;
+        for (Incident inc : incidents) {
+            long step = Math.max(1, Math.round(weight(inc, now) * WEIGHT_STEPS));
+            points.add(new WeightedLatLng(new LatLng(inc.getLatitude(), inc.getLongitude()),
+                    (double) step / WEIGHT_STEPS));
+            signature = 31 * signature + Double.hashCode(inc.getLatitude());
+            signature = 31 * signature + Double.hashCode(inc.getLongitude());
+            signature = 31 * signature + step;
+        }
+        return signature == NO_SIGNATURE ? 1 : signature;
+    }
+
+    /** Gravité de la catégorie × décroissance exponentielle avec l'âge du signalement. */
+    static double weight(Incident inc, long now) {
+        Double severity = SEVERITY.get(IncidentFilterIndex.normalize(inc.getNomCategorie()));
+        double recency = 1.0;
+        if (inc.getDateSignalement() != null) {
+            long age = Math.max(0, now - inc.getDateSignalement().getTime());
+            recency = Math.max(MIN_RECENCY_WEIGHT, Math.pow(0.5, (double) age / RECENCY_HALF_LIFE_MS));
+        }
+        return (severity != null ? severity : DEFAULT_SEVERITY) * recency;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.safecity.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+
+import com.example.safecity.R;
+import com.example.safecity.model.Incident;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.maps.android.clustering.Cluster;
+import com.google.maps.android.clustering.ClusterManager;
+import com.google.maps.android.clustering.view.DefaultClusterRenderer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rendu des incidents sur la carte : pastille à la couleur de la catégorie (atténuée une fois traité),
+ * et groupes à la couleur de leur catégorie majoritaire, avec le palier d'effectif de la librairie (10+, 20+...).
+ * Les BitmapDescriptor sont gardés dans un LRU borné, clé (catégorie, statut, palier) : un même
+ * marqueur n'est dessiné qu'une fois, au lieu d'une allocation de bitmap par marqueur affiché.
+ * Les icônes courantes sont préparées hors du thread UI dès la création du rendu.
+ */
+public class IncidentClusterRenderer extends DefaultClusterRenderer<Incident> {
+
+    /** Nombre maximal d'icônes gardées en mémoire. */
+    private static final int DESCRIPTOR_CACHE_SIZE = 64;
+    private static final int ITEM_BUCKET = 0;
+    private static final int ITEM_DIAMETER_DP = 22;
+    private static final int CLUSTER_MIN_DIAMETER_DP = 34;
+    private static final int CLUSTER_MAX_DIAMETER_DP = 56;
+    private static final int STROKE_DP = 2;
+    // Opacité du remplissage des incidents traités
+    private static final int TRAITE_ALPHA = 120;
+
+    private static final String[] KNOWN_CATEGORIES = { "Accident", "Vol", "Incendie", "Panne", "Autre" };
+    // Premiers paliers de DefaultClusterRenderer, les plus fréquents à l'écran
+    private static final int[] PREWARM_CLUSTER_BUCKETS = { 10, 20, 50 };
+
+    private final LruCache<String, BitmapDescriptor> descriptors = new LruCache<>(DESCRIPTOR_CACHE_SIZE);
+    private final Map<String, Integer> categoryColors = new HashMap<>();
+    private final int defaultColor;
+    private final float density;
+
+    public IncidentClusterRenderer(Context context, GoogleMap map, ClusterManager<Incident> clusterManager) {
+        super(context, map, clusterManager);
+        density = context.getResources().getDisplayMetrics().density;
+        defaultColor = ContextCompat.getColor(context, R.color.category_autre);
+        categoryColors.put(IncidentFilterIndex.normalize("Accident"), ContextCompat.getColor(context, R.color.category_accident));
+        categoryColors.put(IncidentFilterIndex.normalize("Vol"), ContextCompat.getColor(context, R.color.category_vol));
+        categoryColors.put(IncidentFilterIndex.normalize("Incendie"), ContextCompat.getColor(context, R.color.category_incendie));
+        categoryColors.put(IncidentFilterIndex.normalize("Panne"), ContextCompat.getColor(context, R.color.category_panne));
+        categoryColors.put(IncidentFilterIndex.normalize("Autre"), defaultColor);
+        prewarm();
+    }
+
+    @Override
+    protected void onBeforeClusterItemRendered(@NonNull Incident item, @NonNull MarkerOptions markerOptions) {
+        super.onBeforeClusterItemRendered(item, markerOptions);
+        markerOptions.icon(descriptor(item.getNomCategorie(), item.isTraite(), ITEM_BUCKET)).anchor(0.5f, 0.5f);
+    }
+
+    @Override
+    protected void onClusterItemUpdated(@NonNull Incident item, @NonNull Marker marker) {
+        super.onClusterItemUpdated(item, marker);
+        marker.setIcon(descriptor(item.getNomCategorie(), item.isTraite(), ITEM_BUCKET));
+    }
+
+    @Override
+    protected void onBeforeClusterRendered(@NonNull Cluster<Incident> cluster, @NonNull MarkerOptions markerOptions) {
+        super.onBeforeClusterRendered(cluster, markerOptions);
+        markerOptions.anchor(0.5f, 0.5f);
+    }
+
+    /** Appelé par le rendu par défaut à la création et à la mise à jour d'un groupe. */
+    @NonNull
+    @Override
+    protected BitmapDescriptor getDescriptorForCluster(@NonNull Cluster<Incident> cluster) {
+        Map<String, Integer> counts = new HashMap<>();
+        String dominant = null;
+        int best = 0;
+        int traites = 0;
+        for (Incident inc : cluster.getItems()) {
+            if (inc.isTraite()) traites++;
+            String key = IncidentFilterIndex.normalize(inc.getNomCategorie());
+            Integer n = counts.get(key);
+            int count = n == null ? 1 : n + 1;
+            counts.put(key, count);
+            if (count > best) {
+                best = count;
+                dominant = key;
+            }
+        }
+        return descriptor(dominant, traites * 2 > cluster.getSize(), getBucket(cluster));
+    }
+
+    private BitmapDescriptor descriptor(String category, boolean traite, int bucket) {
+        String normalized = IncidentFilterIndex.normalize(category);
+        String key = normalized + '|' + (traite ? 't' : 'n') + '|' + bucket;
+        BitmapDescriptor descriptor = descriptors.get(key);
+        if (descriptor == null) {
+            descriptor = BitmapDescriptorFactory.fromBitmap(draw(colorOf(normalized), traite, bucket));
+            descriptors.put(key, descriptor);
+        }
+        return descriptor;
+    }
+
+    /**
+     * Prépare les icônes des catégories connues sur un exécuteur de fond : le premier affichage
+     * de la carte trouve ses pastilles en cache au lieu de les dessiner sur le thread UI.
+     */
+    private void prewarm() {
+        AppExecutors.getInstance().newSerialExecutor().execute(() -> {
+            for (String category : KNOWN_CATEGORIES) {
+                for (boolean traite : new boolean[] { false, true }) {
+                    descriptor(category, traite, ITEM_BUCKET);
+                    for (int bucket : PREWARM_CLUSTER_BUCKETS) descriptor(category, traite, bucket);
+                }
+            }
+        });
+    }
+
+    private int colorOf(String normalizedCategory) {
+        Integer color = categoryColors.get(normalizedCategory);
+        return color != null ? color : defaultColor;
+    }
+
+    private Bitmap draw(int color, boolean traite, int bucket) {
+        boolean cluster = bucket != ITEM_BUCKET;
+        int diameterDp = cluster
+                ? Math.min(CLUSTER_MAX_DIAMETER_DP, CLUSTER_MIN_DIAMETER_DP + (int) (8 * Math.log10(bucket)))
+                : ITEM_DIAMETER_DP;
+        int size = Math.round(diameterDp * density);
+        float stroke = STROKE_DP * density;
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        float center = size / 2f;
+
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(Color.WHITE);
+        canvas.drawCircle(center, center, center, paint);
+        paint.setColor(color);
+        if (traite) paint.setAlpha(TRAITE_ALPHA);
+        canvas.drawCircle(center, center, center - stroke, paint);
+
+        if (cluster) {
+            Paint text = new Paint(Paint.ANTI_ALIAS_FLAG);
+            text.setColor(Color.WHITE);
+            text.setTypeface(Typeface.DEFAULT_BOLD);
+            text.setTextAlign(Paint.Align.CENTER);
+            text.setTextSize(size * 0.36f);
+            float baseline = center - (text.descent() + text.ascent()) / 2f;
+            canvas.drawText(getClusterText(bucket), center, baseline, text);
+        }
+        return bitmap;
+    }
+}
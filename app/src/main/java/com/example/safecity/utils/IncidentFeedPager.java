@@ -0,0 +1,255 @@
+package com.example.safecity.utils;
+
+import com.example.safecity.model.Incident;
+import com.google.firebase.firestore.ListenerRegistration;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fil d'incidents paginé par curseur.
+ * La tête du fil reste en temps réel (écoute partagée avec la carte), les pages plus anciennes
+ * sont chargées à la demande (startAfter(dateSignalement, id)) quand la liste approche de sa fin.
+ * Seules {@code maxPages} pages anciennes sont gardées en mémoire : au-delà, la page la plus
+ * éloignée est évincée et son curseur conservé pour pouvoir la recharger si l'utilisateur remonte.
+ * Un incident poussé hors de la tête par un plus récent est gardé juste sous la tête : la première
+ * page ancienne part de lui, le curseur ne bouge donc pas quand la tête avance.
+ */
+public class IncidentFeedPager {
+
+    public static final int DEFAULT_PREFETCH_DISTANCE = 5;
+    public static final int DEFAULT_MAX_PAGES = 10;
+
+    public interface OnFeedChangedListener {
+        void onFeedChanged(List<Incident> incidents);
+        void onError(Exception e);
+    }
+
+    /** Page chargée une fois, avec le curseur qui a servi à la charger. */
+    private static class Page {
+        final Incident after;
+        final List<Incident> items;
+
+        Page(Incident after, List<Incident> items) {
+            this.after = after;
+            this.items = items;
+        }
+
+        Incident last() { return items.get(items.size() - 1); }
+    }
+
+    private final FirestoreRepository repo;
+    private final int headSize;
+    private final int pageSize;
+    private final int prefetchDistance;
+    private final int maxPages;
+    private final OnFeedChangedListener listener;
+
+    private ListenerRegistration headRegistration;
+    private List<Incident> headPage = new ArrayList<>();
+    // Incidents sortis par le bas de la tête, du plus récent au plus ancien
+    private final List<Incident> spilled = new ArrayList<>();
+    private final ArrayDeque<Page> olderPages = new ArrayDeque<>();
+    // Curseurs des pages évincées en haut de la fenêtre (la plus proche de la tête en dernier)
+    private final ArrayDeque<Incident> evictedCursors = new ArrayDeque<>();
+
+    private boolean loading = false;
+    private boolean endReached = false;
+    private int generation = 0;
+    // Position de chaque incident dans le dernier fil publié (non filtré)
+    private Map<String, Integer> positions = new HashMap<>();
+    private int publishedCount = 0;
+
+    public IncidentFeedPager(FirestoreRepository repo, OnFeedChangedListener listener) {
+        this(repo, FirestoreRepository.LIVE_INCIDENTS_LIMIT, FirestoreRepository.INCIDENTS_PAGE_SIZE,
+                DEFAULT_PREFETCH_DISTANCE, DEFAULT_MAX_PAGES, listener);
+    }
+
+    public IncidentFeedPager(FirestoreRepository repo, int headSize, int pageSize, int prefetchDistance, int maxPages,
+                             OnFeedChangedListener listener) {
+        this.repo = repo;
+        this.headSize = headSize;
+        this.pageSize = pageSize;
+        this.prefetchDistance = prefetchDistance;
+        this.maxPages = Math.max(1, maxPages);
+        this.listener = listener;
+    }
+
+    /**
+     * Démarre l'écoute de la page de tête. Les pages anciennes repartent de zéro.
+     */
+    public void start() {
+        stop();
+        final int gen = generation;
+        headRegistration = repo.getIncidentsRealtime(headSize, new FirestoreRepository.OnDataLoadListener() {
+            @Override
+            public void onIncidentsLoaded(List<Incident> incidents) {
+                if (gen != generation) return;
+                onHeadChanged(incidents != null ? incidents : new ArrayList<>());
+                if (headPage.size() < headSize) endReached = olderPages.isEmpty();
+                publish();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (gen == generation) listener.onError(e);
+            }
+        });
+    }
+
+    public void stop() {
+        generation++;
+        if (headRegistration != null) {
+            headRegistration.remove();
+            headRegistration = null;
+        }
+        headPage = new ArrayList<>();
+        spilled.clear();
+        olderPages.clear();
+        evictedCursors.clear();
+        loading = false;
+        endReached = false;
+        positions = new HashMap<>();
+        publishedCount = 0;
+    }
+
+    /**
+     * À appeler depuis le défilement de la liste, avec les incidents visibles en haut et en bas.
+     * La liste affichée peut être filtrée : les positions sont ramenées à celles du fil complet.
+     * {@code atListEnd} indique que le dernier élément affiché est visible (fin de la liste filtrée).
+     * Déclenche le préchargement de la page suivante près de la fin, ou le rechargement
+     * d'une page évincée près du haut.
+     */
+    public void onScrollPositionChanged(Incident firstVisible, Incident lastVisible, boolean atListEnd) {
+        if (loading || headRegistration == null || headPage.isEmpty()) return;
+        int first = positionOf(firstVisible, 0);
+        int last = positionOf(lastVisible, publishedCount - 1);
+
+        if (!endReached && (atListEnd || last >= publishedCount - 1 - prefetchDistance)) {
+            loadNextPage();
+        } else if (!evictedCursors.isEmpty() && first <= headPage.size() + spilled.size() + prefetchDistance) {
+            loadPreviousPage();
+        }
+    }
+
+    private int positionOf(Incident incident, int fallback) {
+        Integer position = incident != null ? positions.get(incident.getId()) : null;
+        return position != null ? position : fallback;
+    }
+
+    /**
+     * Nouvelle page de tête. Les incidents qu'elle a perdus par le bas (plus anciens que son dernier
+     * élément, tête pleine) sont gardés sous la tête ; les autres ont été supprimés.
+     */
+    private void onHeadChanged(List<Incident> incidents) {
+        Set<String> ids = new HashSet<>();
+        for (Incident inc : incidents) ids.add(inc.getId());
+        for (int i = spilled.size() - 1; i >= 0; i--) {
+            if (ids.contains(spilled.get(i).getId())) spilled.remove(i);
+        }
+        if (incidents.size() >= headSize && !incidents.isEmpty()) {
+            Incident newLast = incidents.get(incidents.size() - 1);
+            List<Incident> dropped = new ArrayList<>();
+            for (Incident inc : headPage) {
+                if (!ids.contains(inc.getId()) && compareFeedOrder(inc, newLast) > 0) dropped.add(inc);
+            }
+            spilled.addAll(0, dropped);
+        }
+        headPage = incidents;
+    }
+
+    /** Ordre du fil : dateSignalement puis id, décroissants. Négatif si {@code a} vient avant {@code b}. */
+    private static int compareFeedOrder(Incident a, Incident b) {
+        long da = a.getDateSignalement() != null ? a.getDateSignalement().getTime() : Long.MIN_VALUE;
+        long db = b.getDateSignalement() != null ? b.getDateSignalement().getTime() : Long.MIN_VALUE;
+        if (da != db) return da > db ? -1 : 1;
+        return -a.getId().compareTo(b.getId());
+    }
+
+    private void loadNextPage() {
+        Incident after;
+        if (!olderPages.isEmpty()) after = olderPages.peekLast().last();
+        else if (!spilled.isEmpty()) after = spilled.get(spilled.size() - 1);
+        else after = headPage.get(headPage.size() - 1);
+        loading = true;
+        final int gen = generation;
+        repo.getIncidentsPage(after, pageSize, new FirestoreRepository.OnDataLoadListener() {
+            @Override
+            public void onIncidentsLoaded(List<Incident> incidents) {
+                if (gen != generation) return;
+                loading = false;
+                if (incidents == null || incidents.isEmpty()) {
+                    endReached = true;
+                    return;
+                }
+                endReached = incidents.size() < pageSize;
+                olderPages.addLast(new Page(after, incidents));
+                if (olderPages.size() > maxPages) {
+                    evictedCursors.addLast(olderPages.pollFirst().after);
+                }
+                publish();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (gen != generation) return;
+                loading = false;
+                listener.onError(e);
+            }
+        });
+    }
+
+    private void loadPreviousPage() {
+        Incident after = evictedCursors.pollLast();
+        loading = true;
+        final int gen = generation;
+        repo.getIncidentsPage(after, pageSize, new FirestoreRepository.OnDataLoadListener() {
+            @Override
+            public void onIncidentsLoaded(List<Incident> incidents) {
+                if (gen != generation) return;
+                loading = false;
+                if (incidents == null || incidents.isEmpty()) return;
+                olderPages.addFirst(new Page(after, incidents));
+                if (olderPages.size() > maxPages) {
+                    olderPages.pollLast();
+                    endReached = false;
+                }
+                publish();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (gen != generation) return;
+                loading = false;
+                evictedCursors.addLast(after);
+                listener.onError(e);
+            }
+        });
+    }
+
+    private void publish() {
+        List<Incident> all = new ArrayList<>(headSize + spilled.size() + olderPages.size() * pageSize);
+        Set<String> seen = new HashSet<>();
+        for (Incident inc : headPage) {
+            if (seen.add(inc.getId())) all.add(inc);
+        }
+        for (Incident inc : spilled) {
+            if (seen.add(inc.getId())) all.add(inc);
+        }
+        for (Page page : olderPages) {
+            for (Incident inc : page.items) {
+                if (seen.add(inc.getId())) all.add(inc);
+            }
+        }
+        Map<String, Integer> index = new HashMap<>(all.size() * 2);
+        for (int i = 0; i < all.size(); i++) index.put(all.get(i).getId(), i);
+        positions = index;
+        publishedCount = all.size();
+        listener.onFeedChanged(all);
+    }
+}
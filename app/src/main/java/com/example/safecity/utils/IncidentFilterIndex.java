@@ -0,0 +1,144 @@
+package com.example.safecity.utils;
+
+import com.example.safecity.model.Incident;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Index en mémoire des incidents par statut et par catégorie, pour les filtres de la carte et du fil.
+ * Chaque incident occupe un emplacement fixe ; un BitSet par statut et par catégorie (valeurs
+ * normalisées) marque les emplacements concernés, et la validité des coordonnées est précalculée.
+ * Une combinaison de filtres devient une intersection de BitSet au lieu d'une comparaison de
+ * chaînes sur chaque incident. {@link #update} ne réindexe que les incidents nouveaux ou modifiés
+ * (nouvelle instance), et se fait à l'arrivée des données, pas au changement de filtre.
+ * Non synchronisé : à utiliser depuis un seul thread (l'exécuteur de filtrage de l'écran).
+ */
+public class IncidentFilterIndex {
+
+    // En deçà, la latitude est considérée comme absente (coordonnées 0,0 par défaut)
+    private static final double MIN_VALID_LATITUDE = 0.001;
+
+    private final Map<String, Integer> slotById = new HashMap<>();
+    private final List<Incident> slots = new ArrayList<>();
+    private final BitSet occupied = new BitSet();
+    private final BitSet geoValid = new BitSet();
+    private final Map<String, BitSet> byStatus = new HashMap<>();
+    private final Map<String, BitSet> byCategory = new HashMap<>();
+    // Emplacements dans l'ordre de la dernière liste reçue (ordre d'affichage)
+    private int[] order = new int[0];
+
+    /**
+     * Remplace le contenu de l'index par {@code incidents}, en gardant leur ordre.
+     * Les incidents absents de la liste sont retirés, les instances inchangées ne sont pas relues.
+     */
+    public void update(List<Incident> incidents) {
+        BitSet seen = new BitSet(slots.size());
+        int[] nextOrder = new int[incidents.size()];
+        int count = 0;
+        for (Incident inc : incidents) {
+            if (inc == null || inc.getId() == null) continue;
+            Integer slot = slotById.get(inc.getId());
+            if (slot == null) {
+                slot = allocate();
+                slotById.put(inc.getId(), slot);
+                index(slot, inc);
+            } else if (seen.get(slot)) {
+                continue; // doublon dans la liste reçue
+            } else if (slots.get(slot) != inc) {
+                unindex(slot);
+                index(slot, inc);
+            }
+            seen.set(slot);
+            nextOrder[count++] = slot;
+        }
+
+        // Emplacements occupés absents de la nouvelle liste
+        BitSet stale = (BitSet) occupied.clone();
+        stale.andNot(seen);
+        for (int slot = stale.nextSetBit(0); slot >= 0; slot = stale.nextSetBit(slot + 1)) {
+            slotById.remove(slots.get(slot).getId());
+            unindex(slot);
+            slots.set(slot, null);
+            occupied.clear(slot);
+        }
+
+        order = count == nextOrder.length ? nextOrder : Arrays.copyOf(nextOrder, count);
+    }
+
+    /**
+     * Incidents correspondant aux filtres, dans l'ordre de la dernière liste reçue.
+     * @param status statut recherché, ou {@code null} pour tous
+     * @param category catégorie recherchée, ou {@code null} pour toutes
+     * @param geoOnly ne garder que les incidents aux coordonnées renseignées
+     */
+    public List<Incident> query(String status, String category, boolean geoOnly) {
+        BitSet match = (BitSet) occupied.clone();
+        if (status != null) and(match, byStatus.get(normalize(status)));
+        if (category != null) and(match, byCategory.get(normalize(category)));
+        if (geoOnly) match.and(geoValid);
+
+        List<Incident> result = new ArrayList<>(match.cardinality());
+        if (match.isEmpty()) return result;
+        for (int slot : order) {
+            if (match.get(slot)) result.add(slots.get(slot));
+        }
+        return result;
+    }
+
+    public int size() {
+        return order.length;
+    }
+
+    /** Clé d'index : casse et espaces ignorés, comme l'ancien equalsIgnoreCase. */
+    static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private int allocate() {
+        int slot = occupied.nextClearBit(0);
+        if (slot == slots.size()) slots.add(null);
+        occupied.set(slot);
+        return slot;
+    }
+
+    private void index(int slot, Incident inc) {
+        slots.set(slot, inc);
+        bits(byStatus, inc.getStatut()).set(slot);
+        bits(byCategory, inc.getNomCategorie()).set(slot);
+        if (Math.abs(inc.getLatitude()) > MIN_VALID_LATITUDE) geoValid.set(slot);
+    }
+
+    private void unindex(int slot) {
+        Incident old = slots.get(slot);
+        if (old == null) return;
+        clear(byStatus, old.getStatut(), slot);
+        clear(byCategory, old.getNomCategorie(), slot);
+        geoValid.clear(slot);
+    }
+
+    private static BitSet bits(Map<String, BitSet> map, String value) {
+        String key = normalize(value);
+        BitSet set = map.get(key);
+        if (set == null) {
+            set = new BitSet();
+            map.put(key, set);
+        }
+        return set;
+    }
+
+    private static void clear(Map<String, BitSet> map, String value, int slot) {
+        BitSet set = map.get(normalize(value));
+        if (set != null) set.clear(slot);
+    }
+
+    private static void and(BitSet match, BitSet filter) {
+        if (filter == null) match.clear();
+        else match.and(filter);
+    }
+}
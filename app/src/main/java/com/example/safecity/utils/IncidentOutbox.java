@@ -0,0 +1,119 @@
+package com.example.safecity.utils;
+
+import android.content.Context;
+
+import androidx.lifecycle.LiveData;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+
+import com.example.safecity.model.Incident;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * File d'envoi persistante des nouveaux signalements.
+ * Un signalement est enregistré sur disque immédiatement (ligne LocalStore + photo copiée dans
+ * filesDir/outbox), puis envoyé par OutboxWorker quand le réseau est disponible, avec reprise
+ * automatique. Il survit ainsi à la fermeture de l'écran comme à l'arrêt du processus.
+ */
+public class IncidentOutbox {
+
+    public static final String WORK_NAME = "incident_outbox";
+    private static final String OUTBOX_DIR = "outbox";
+
+    /**
+     * Signalement en attente ; {@code id} est aussi l'identifiant du futur document Firestore.
+     * {@code committed} : le document est créé, seule la photo reste à envoyer et à rattacher.
+     */
+    public static class Entry {
+        public final String id;
+        public final Incident incident;
+        public final String photoPath;
+        public final int attempts;
+        public final boolean committed;
+
+        Entry(String id, Incident incident, String photoPath, int attempts, boolean committed) {
+            this.id = id;
+            this.incident = incident;
+            this.photoPath = photoPath;
+            this.attempts = attempts;
+            this.committed = committed;
+        }
+    }
+
+    private IncidentOutbox() {}
+
+    /**
+     * Enregistre le signalement et programme son envoi. La photo temporaire (facultative)
+     * est déplacée dans le dossier de l'outbox. Retourne immédiatement.
+     */
+    public static void enqueue(Context context, Incident incident, String tempPhotoPath) {
+        Context appContext = context.getApplicationContext();
+        AppExecutors.getInstance().diskIO().execute(() -> {
+            // Identifiant Firestore attribué localement : il nomme aussi la photo dans Storage
+            String id = FirestoreRepository.newIncidentId();
+            incident.setId(id);
+            String photoPath = tempPhotoPath != null ? moveToOutbox(appContext, tempPhotoPath, id) : null;
+            LocalStore.getInstance(appContext).insertOutbox(new Entry(id, incident, photoPath, 0, false));
+            schedule(appContext);
+        });
+    }
+
+    /**
+     * Programme (ou reprogramme à la suite) le vidage de l'outbox.
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(OutboxWorker.class)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 30, TimeUnit.SECONDS)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(WORK_NAME, ExistingWorkPolicy.APPEND_OR_REPLACE, request);
+    }
+
+    /** État des envois, pour l'afficher dans l'interface (progression : OutboxWorker.KEY_SENT / KEY_TOTAL). */
+    public static LiveData<List<WorkInfo>> observe(Context context) {
+        return WorkManager.getInstance(context).getWorkInfosForUniqueWorkLiveData(WORK_NAME);
+    }
+
+    static void deletePhoto(String path) {
+        if (path == null) return;
+        File file = new File(path);
+        if (file.exists()) file.delete();
+    }
+
+    private static String moveToOutbox(Context context, String tempPath, String id) {
+        File source = new File(tempPath);
+        if (!source.exists()) return null;
+        File dir = new File(context.getFilesDir(), OUTBOX_DIR);
+        if (!dir.exists()) dir.mkdirs();
+        File target = new File(dir, id + ".jpg");
+
+        // La photo compressée peut être sur un autre volume (stockage externe) : copie puis suppression
+        if (!source.renameTo(target)) {
+            try (InputStream in = new FileInputStream(source); OutputStream out = new FileOutputStream(target)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+            } catch (IOException e) {
+                return tempPath;
+            }
+            source.delete();
+        }
+        return target.getAbsolutePath();
+    }
+}
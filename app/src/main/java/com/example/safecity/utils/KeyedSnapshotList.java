@@ -0,0 +1,151 @@
+package com.example.safecity.utils;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Modèle en mémoire d'une requête Firestore, mis à jour à partir de getDocumentChanges().
+ * Seuls les documents ajoutés ou modifiés sont désérialisés : les objets inchangés
+ * gardent la même instance d'un snapshot à l'autre.
+ * Un document que le mapper ne sait pas convertir ({@code null}) garde sa place dans le modèle,
+ * pour rester aligné sur les index de Firestore, mais n'apparaît ni dans la liste ni dans les deltas.
+ */
+public class KeyedSnapshotList<T> {
+
+    public interface Mapper<T> {
+        T map(DocumentSnapshot doc);
+    }
+
+    /**
+     * Changement positionnel, à appliquer dans l'ordre (mêmes conventions que DocumentChange).
+     */
+    public static class Change {
+        public static final int INSERTED = 0;
+        public static final int REMOVED = 1;
+        public static final int CHANGED = 2;
+        public static final int MOVED = 3;
+
+        public final int type;
+        public final int oldIndex;
+        public final int newIndex;
+
+        Change(int type, int oldIndex, int newIndex) {
+            this.type = type;
+            this.oldIndex = oldIndex;
+            this.newIndex = newIndex;
+        }
+    }
+
+    // Aligné sur les index des documents ; null pour un document non converti
+    private final List<T> items = new ArrayList<>();
+    private final Mapper<T> mapper;
+    private int visibleCount = 0;
+    private boolean initialized = false;
+
+    public KeyedSnapshotList(Mapper<T> mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * Applique les changements d'un snapshot et retourne les deltas correspondants.
+     * Retourne {@code null} pour le premier snapshot : l'appelant doit alors tout rafraîchir,
+     * car son affichage peut encore contenir les données d'une écoute précédente.
+     */
+    public List<Change> apply(QuerySnapshot snapshot) {
+        if (snapshot == null) return Collections.emptyList();
+        boolean firstSnapshot = !initialized;
+        initialized = true;
+        List<Change> changes = new ArrayList<>();
+        for (DocumentChange dc : snapshot.getDocumentChanges()) {
+            int oldIndex = dc.getOldIndex();
+            int newIndex = dc.getNewIndex();
+            switch (dc.getType()) {
+                case ADDED: {
+                    T added = mapper.map(dc.getDocument());
+                    items.add(newIndex, added);
+                    if (added != null) {
+                        visibleCount++;
+                        changes.add(new Change(Change.INSERTED, -1, visibleIndex(newIndex)));
+                    }
+                    break;
+                }
+                case MODIFIED: {
+                    T updated = mapper.map(dc.getDocument());
+                    int oldVisible = visibleIndex(oldIndex);
+                    T previous = items.remove(oldIndex);
+                    items.add(newIndex, updated);
+                    int newVisible = visibleIndex(newIndex);
+                    if (previous == null && updated == null) break;
+                    if (previous == null) {
+                        visibleCount++;
+                        changes.add(new Change(Change.INSERTED, -1, newVisible));
+                    } else if (updated == null) {
+                        visibleCount--;
+                        changes.add(new Change(Change.REMOVED, oldVisible, -1));
+                    } else {
+                        if (oldVisible != newVisible) changes.add(new Change(Change.MOVED, oldVisible, newVisible));
+                        changes.add(new Change(Change.CHANGED, newVisible, newVisible));
+                    }
+                    break;
+                }
+                case REMOVED: {
+                    int oldVisible = visibleIndex(oldIndex);
+                    if (items.remove(oldIndex) != null) {
+                        visibleCount--;
+                        changes.add(new Change(Change.REMOVED, oldVisible, -1));
+                    }
+                    break;
+                }
+            }
+        }
+        return firstSnapshot ? null : changes;
+    }
+
+    /** Copie de l'état courant, sûre à transmettre à l'interface. */
+    public List<T> snapshot() {
+        List<T> copy = new ArrayList<>(visibleCount);
+        for (T item : items) {
+            if (item != null) copy.add(item);
+        }
+        return copy;
+    }
+
+    public int size() {
+        return visibleCount;
+    }
+
+    /** Position dans la liste visible du document d'index {@code index}. */
+    private int visibleIndex(int index) {
+        if (visibleCount == items.size()) return index;
+        int visible = 0;
+        for (int i = 0; i < index; i++) {
+            if (items.get(i) != null) visible++;
+        }
+        return visible;
+    }
+
+    /**
+     * Transmet les deltas à un adaptateur ligne par ligne ({@code null} : rafraîchissement complet).
+     */
+    public static void dispatch(List<Change> changes, RecyclerView.Adapter<?> adapter) {
+        if (changes == null) {
+            adapter.notifyDataSetChanged();
+            return;
+        }
+        for (Change c : changes) {
+            switch (c.type) {
+                case Change.INSERTED: adapter.notifyItemInserted(c.newIndex); break;
+                case Change.REMOVED: adapter.notifyItemRemoved(c.oldIndex); break;
+                case Change.CHANGED: adapter.notifyItemChanged(c.newIndex); break;
+                case Change.MOVED: adapter.notifyItemMoved(c.oldIndex, c.newIndex); break;
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.safecity.utils;
+
+import com.example.safecity.model.Incident;
+import com.google.firebase.firestore.ListenerRegistration;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ensemble local des incidents aimés par l'utilisateur connecté.
+ * Il est synchronisé avec l'index utilisateurs/{uid}/likes : savoir si un incident est aimé
+ * est un test O(1), sans que les documents incidents ne transportent la liste de leurs likers.
+ * Les changements pas encore confirmés par le serveur (LikeManager) sont gardés à part et
+ * priment sur l'état synchronisé jusqu'à leur confirmation ou leur annulation.
+ * L'ajustement optimiste du compteur est gardé ici aussi, à côté de l'état : les objets Incident,
+ * partagés entre les écrans, ne sont jamais modifiés.
+ * Toutes les méthodes sont appelées sur le thread principal.
+ */
+public class LikeIndex {
+
+    public interface OnLikesChangedListener {
+        void onLikesChanged();
+    }
+
+    private static LikeIndex sInstance;
+
+    private final Set<String> likedIds = new HashSet<>();
+    private final Map<String, Boolean> overrides = new HashMap<>();
+    private final Map<String, CountAdjustment> countAdjustments = new HashMap<>();
+    private final List<OnLikesChangedListener> listeners = new ArrayList<>();
+    private String watchedUid;
+    private ListenerRegistration watchRegistration;
+
+    /**
+     * Écart local sur likesCount, valable tant que le serveur renvoie encore {@code baseCount} :
+     * dès que le compteur publié change (report des fragments), la valeur serveur fait foi.
+     */
+    private static class CountAdjustment {
+        final int baseCount;
+        int delta;
+
+        CountAdjustment(int baseCount) {
+            this.baseCount = baseCount;
+        }
+    }
+
+    private LikeIndex() {}
+
+    public static synchronized LikeIndex getInstance() {
+        if (sInstance == null) sInstance = new LikeIndex();
+        return sInstance;
+    }
+
+    public boolean isLiked(String incidentId) {
+        if (incidentId == null) return false;
+        Boolean override = overrides.get(incidentId);
+        return override != null ? override : likedIds.contains(incidentId);
+    }
+
+    /** État synchronisé avec le serveur, sans les changements en attente. */
+    boolean isConfirmedLiked(String incidentId) {
+        return incidentId != null && likedIds.contains(incidentId);
+    }
+
+    /** Compteur de likes à afficher pour {@code incident}, ajustement optimiste compris. */
+    public int getDisplayedLikesCount(Incident incident) {
+        CountAdjustment adjustment = countAdjustments.get(incident.getId());
+        if (adjustment == null || adjustment.baseCount != incident.getLikesCount()) return incident.getLikesCount();
+        return Math.max(0, adjustment.baseCount + adjustment.delta);
+    }
+
+    /**
+     * Ajoute {@code delta} au compteur affiché de {@code incidentId}, par rapport à la valeur
+     * serveur {@code serverCount}. À appeler avant setOverride, qui prévient les écrans.
+     */
+    void adjustLikesCount(String incidentId, int serverCount, int delta) {
+        CountAdjustment adjustment = countAdjustments.get(incidentId);
+        if (adjustment == null || adjustment.baseCount != serverCount) {
+            adjustment = new CountAdjustment(serverCount);
+            countAdjustments.put(incidentId, adjustment);
+        }
+        adjustment.delta += delta;
+        if (adjustment.delta == 0) countAdjustments.remove(incidentId);
+    }
+
+    /** Retire un ajustement dont l'écriture a échoué (sans effet si le serveur a déjà publié un autre compteur). */
+    void revertLikesCount(String incidentId, int delta) {
+        CountAdjustment adjustment = countAdjustments.get(incidentId);
+        if (adjustment == null) return;
+        adjustment.delta -= delta;
+        if (adjustment.delta == 0) countAdjustments.remove(incidentId);
+    }
+
+    /** État optimiste, affiché en attendant la confirmation du serveur. */
+    void setOverride(String incidentId, boolean liked) {
+        boolean before = isLiked(incidentId);
+        overrides.put(incidentId, liked);
+        if (before != liked) notifyListeners();
+    }
+
+    /** Abandonne l'état optimiste : l'état synchronisé redevient visible. */
+    void clearOverride(String incidentId) {
+        boolean before = isLiked(incidentId);
+        overrides.remove(incidentId);
+        if (before != isLiked(incidentId)) notifyListeners();
+    }
+
+    /** Le serveur a accepté l'écriture : l'état devient l'état synchronisé. */
+    void confirm(String incidentId, boolean liked) {
+        boolean before = isLiked(incidentId);
+        if (liked) likedIds.add(incidentId); else likedIds.remove(incidentId);
+        overrides.remove(incidentId);
+        if (before != liked) notifyListeners();
+    }
+
+    public void addListener(OnLikesChangedListener listener) {
+        if (!listeners.contains(listener)) listeners.add(listener);
+    }
+
+    public void removeListener(OnLikesChangedListener listener) {
+        listeners.remove(listener);
+    }
+
+    void replaceAll(Collection<String> incidentIds) {
+        if (likedIds.size() == incidentIds.size() && likedIds.containsAll(incidentIds)) return;
+        likedIds.clear();
+        likedIds.addAll(incidentIds);
+        notifyListeners();
+    }
+
+    void setWatch(String uid, ListenerRegistration registration) {
+        stopWatch();
+        watchedUid = uid;
+        watchRegistration = registration;
+    }
+
+    boolean isWatching(String uid) {
+        return uid != null && uid.equals(watchedUid) && watchRegistration != null;
+    }
+
+    /**
+     * Vide l'index et arrête sa synchronisation (déconnexion).
+     */
+    public void clear() {
+        stopWatch();
+        likedIds.clear();
+        overrides.clear();
+        countAdjustments.clear();
+        notifyListeners();
+    }
+
+    private void stopWatch() {
+        if (watchRegistration != null) {
+            watchRegistration.remove();
+            watchRegistration = null;
+        }
+        watchedUid = null;
+    }
+
+    private void notifyListeners() {
+        for (OnLikesChangedListener l : new ArrayList<>(listeners)) l.onLikesChanged();
+    }
+}
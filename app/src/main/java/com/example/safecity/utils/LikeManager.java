@@ -0,0 +1,139 @@
+package com.example.safecity.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.safecity.model.Incident;
+import com.example.safecity.model.Utilisateur;
+import com.google.firebase.auth.FirebaseAuth;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Point d'entrée unique pour aimer / ne plus aimer un incident.
+ * L'état affiché change immédiatement (LikeIndex), puis l'écriture est retardée de
+ * {@link #DEBOUNCE_MS} par incident : une série de taps n'envoie que l'état final,
+ * et rien du tout si cet état est celui que le serveur aura déjà. En cas d'échec, l'affichage
+ * revient à l'état synchronisé.
+ * Toutes les méthodes sont appelées sur le thread principal.
+ */
+public class LikeManager {
+
+    public static final long DEBOUNCE_MS = 600;
+
+    private static class Pending {
+        final String incidentId;
+        final String authorId;
+        boolean desiredLiked;
+        // Écart cumulé appliqué au compteur affiché par les taps de cette série
+        int countDelta;
+        Runnable flush;
+
+        Pending(Incident incident) {
+            this.incidentId = incident.getId();
+            this.authorId = incident.getIdUtilisateur();
+        }
+    }
+
+    private static LikeManager sInstance;
+
+    private final Map<String, Pending> pending = new HashMap<>();
+    // Dernière écriture envoyée et pas encore terminée, par incident
+    private final Map<String, Pending> inFlight = new HashMap<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final FirestoreRepository repo = new FirestoreRepository("likes");
+
+    private LikeManager() {}
+
+    public static synchronized LikeManager getInstance() {
+        if (sInstance == null) sInstance = new LikeManager();
+        return sInstance;
+    }
+
+    /**
+     * Inverse l'état du like de l'utilisateur connecté sur {@code incident}.
+     * Le compteur affiché est ajusté dans LikeIndex ({@link LikeIndex#getDisplayedLikesCount}) ;
+     * l'objet {@code incident} n'est pas modifié.
+     * @return le nouvel état affiché, ou false si personne n'est connecté.
+     */
+    public boolean toggle(Incident incident) {
+        String uid = FirebaseAuth.getInstance().getUid();
+        if (uid == null || incident == null || incident.getId() == null) return false;
+
+        LikeIndex index = LikeIndex.getInstance();
+        String id = incident.getId();
+        boolean liked = !index.isLiked(id);
+
+        Pending p = pending.get(id);
+        if (p == null) {
+            p = new Pending(incident);
+            pending.put(id, p);
+        } else {
+            handler.removeCallbacks(p.flush);
+        }
+        p.desiredLiked = liked;
+
+        int delta = liked ? 1 : -1;
+        p.countDelta += delta;
+        index.adjustLikesCount(id, incident.getLikesCount(), delta);
+        index.setOverride(id, liked);
+
+        final Pending scheduled = p;
+        p.flush = () -> flush(uid, scheduled);
+        handler.postDelayed(p.flush, DEBOUNCE_MS);
+        return liked;
+    }
+
+    /**
+     * Abandonne les écritures en attente (déconnexion).
+     */
+    public void cancelAll() {
+        for (Pending p : pending.values()) handler.removeCallbacks(p.flush);
+        pending.clear();
+        inFlight.clear();
+    }
+
+    private void flush(String uid, Pending p) {
+        pending.remove(p.incidentId);
+        LikeIndex index = LikeIndex.getInstance();
+
+        // État du serveur une fois terminées les écritures déjà envoyées
+        Pending sent = inFlight.get(p.incidentId);
+        boolean expected = sent != null ? sent.desiredLiked : index.isConfirmedLiked(p.incidentId);
+        // Les taps se sont annulés : aucune écriture, aucune notification
+        if (p.desiredLiked == expected) {
+            if (sent == null) index.clearOverride(p.incidentId);
+            return;
+        }
+
+        Utilisateur me = UserCache.getInstance().getFresh(uid);
+        String likerName = me != null && me.getNom() != null ? me.getNom() : "Un utilisateur";
+
+        inFlight.put(p.incidentId, p);
+        repo.setLike(p.incidentId, p.authorId, uid, likerName, p.desiredLiked, new FirestoreRepository.OnFirestoreTaskComplete() {
+            @Override
+            public void onSuccess() {
+                if (!settle(p)) return;
+                index.confirm(p.incidentId, p.desiredLiked);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                index.revertLikesCount(p.incidentId, p.countDelta);
+                if (!settle(p)) return;
+                index.clearOverride(p.incidentId);
+            }
+        });
+    }
+
+    /**
+     * Fin de l'écriture de {@code p}. Retourne true si c'est la plus récente pour l'incident
+     * et qu'aucune série de taps ne l'a suivie : l'état affiché peut alors être réglé.
+     */
+    private boolean settle(Pending p) {
+        boolean latest = inFlight.get(p.incidentId) == p;
+        if (latest) inFlight.remove(p.incidentId);
+        return latest && !pending.containsKey(p.incidentId);
+    }
+}
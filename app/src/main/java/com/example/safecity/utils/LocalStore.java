@@ -0,0 +1,403 @@
+package com.example.safecity.utils;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.example.safecity.model.Comment;
+import com.example.safecity.model.Incident;
+import com.example.safecity.model.NotificationApp;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Copie locale (SQLite) des incidents, commentaires et notifications.
+ * Les écrans s'affichent d'abord depuis cette base, puis se mettent à jour avec Firestore ;
+ * sans réseau, ils continuent d'afficher la dernière version connue.
+ * Les méthodes accèdent au disque : elles sont appelées depuis AppExecutors.diskIO().
+ * Le catalogue des catégories a sa propre copie disque (CategoryCache).
+ */
+public class LocalStore extends SQLiteOpenHelper {
+
+    private static final String DB_NAME = "safecity_local.db";
+    private static final int DB_VERSION = 4;
+
+    private static final String T_INCIDENTS = "incidents";
+    private static final String T_COMMENTS = "comments";
+    private static final String T_NOTIFICATIONS = "notifications";
+    private static final String T_SYNC_STATE = "sync_state";
+    private static final String T_OUTBOX = "outbox";
+
+    private static LocalStore sInstance;
+
+    private LocalStore(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+    }
+
+    public static synchronized LocalStore getInstance(Context context) {
+        if (sInstance == null) sInstance = new LocalStore(context.getApplicationContext());
+        return sInstance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        createCacheTables(db);
+        createOutbox(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Les tables de cache sont reconstruites, la synchronisation les remplira à nouveau.
+        // L'outbox contient des signalements pas encore envoyés : elle est conservée.
+        db.execSQL("DROP TABLE IF EXISTS " + T_INCIDENTS);
+        db.execSQL("DROP TABLE IF EXISTS " + T_COMMENTS);
+        db.execSQL("DROP TABLE IF EXISTS " + T_NOTIFICATIONS);
+        db.execSQL("DROP TABLE IF EXISTS " + T_SYNC_STATE);
+        createCacheTables(db);
+        createOutbox(db);
+        if (oldVersion == 2) {
+            db.execSQL("ALTER TABLE " + T_OUTBOX + " ADD COLUMN committed INTEGER DEFAULT 0");
+        }
+    }
+
+    private static void createCacheTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + T_INCIDENTS + " ("
+                + "id TEXT PRIMARY KEY, idUtilisateur TEXT, nomUtilisateur TEXT, auteurPhotoUrl TEXT, "
+                + "description TEXT, photoUrl TEXT, videoUrl TEXT, idCategorie TEXT, nomCategorie TEXT, "
+                + "statut TEXT, latitude REAL, longitude REAL, geohash TEXT, dateSignalement INTEGER, "
+                + "likesCount INTEGER, commentsCount INTEGER, updatedAt INTEGER)");
+        db.execSQL("CREATE INDEX idx_incidents_date ON " + T_INCIDENTS + " (dateSignalement DESC)");
+
+        db.execSQL("CREATE TABLE " + T_COMMENTS + " ("
+                + "id TEXT PRIMARY KEY, idIncident TEXT, idUtilisateur TEXT, nomUtilisateur TEXT, "
+                + "auteurPhotoUrl TEXT, texte TEXT, datePublication INTEGER)");
+        db.execSQL("CREATE INDEX idx_comments_incident ON " + T_COMMENTS + " (idIncident, datePublication)");
+
+        db.execSQL("CREATE TABLE " + T_NOTIFICATIONS + " ("
+                + "id TEXT PRIMARY KEY, idDestinataire TEXT, titre TEXT, message TEXT, type TEXT, "
+                + "idIncidentSource TEXT, nomExpediteur TEXT, lu INTEGER, date INTEGER)");
+        db.execSQL("CREATE INDEX idx_notifications_user ON " + T_NOTIFICATIONS + " (idDestinataire, date DESC)");
+
+        db.execSQL("CREATE TABLE " + T_SYNC_STATE + " (name TEXT PRIMARY KEY, watermark INTEGER, documentId TEXT)");
+    }
+
+    private static void createOutbox(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + T_OUTBOX + " ("
+                + "id TEXT PRIMARY KEY, idUtilisateur TEXT, nomUtilisateur TEXT, auteurPhotoUrl TEXT, "
+                + "description TEXT, idCategorie TEXT, nomCategorie TEXT, latitude REAL, longitude REAL, "
+                + "dateSignalement INTEGER, photoPath TEXT, photoUrl TEXT, attempts INTEGER DEFAULT 0, "
+                + "committed INTEGER DEFAULT 0, createdAt INTEGER)");
+    }
+
+    // --- Incidents ---
+
+    public void upsertIncidents(Collection<Incident> incidents) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (Incident inc : incidents) {
+                if (inc.getId() == null) continue;
+                db.insertWithOnConflict(T_INCIDENTS, null, toValues(inc), SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void deleteIncidents(Collection<String> ids) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (String id : ids) {
+                db.delete(T_INCIDENTS, "id = ?", new String[] { id });
+                db.delete(T_COMMENTS, "idIncident = ?", new String[] { id });
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** Incidents les plus récents, dans l'ordre du fil (dateSignalement puis id, décroissants). */
+    public List<Incident> getRecentIncidents(int limit) {
+        List<Incident> list = new ArrayList<>();
+        try (Cursor c = getReadableDatabase().query(T_INCIDENTS, null, null, null, null, null,
+                "dateSignalement DESC, id DESC", String.valueOf(limit))) {
+            while (c.moveToNext()) list.add(incidentFrom(c));
+        }
+        return list;
+    }
+
+    // --- Commentaires ---
+
+    /** Remplace les commentaires connus d'un incident par la dernière liste reçue. */
+    public void replaceComments(String incidentId, List<Comment> comments) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(T_COMMENTS, "idIncident = ?", new String[] { incidentId });
+            for (Comment comment : comments) {
+                if (comment.getId() == null) continue;
+                ContentValues v = new ContentValues();
+                v.put("id", comment.getId());
+                v.put("idIncident", incidentId);
+                v.put("idUtilisateur", comment.getIdUtilisateur());
+                v.put("nomUtilisateur", comment.getNomUtilisateur());
+                v.put("auteurPhotoUrl", comment.getAuteurPhotoUrl());
+                v.put("texte", comment.getTexte());
+                v.put("datePublication", millis(comment.getDatePublication()));
+                db.insertWithOnConflict(T_COMMENTS, null, v, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public List<Comment> getComments(String incidentId) {
+        List<Comment> list = new ArrayList<>();
+        try (Cursor c = getReadableDatabase().query(T_COMMENTS, null, "idIncident = ?", new String[] { incidentId },
+                null, null, "datePublication ASC")) {
+            while (c.moveToNext()) {
+                Comment comment = new Comment(
+                        c.getString(c.getColumnIndexOrThrow("idIncident")),
+                        c.getString(c.getColumnIndexOrThrow("idUtilisateur")),
+                        c.getString(c.getColumnIndexOrThrow("nomUtilisateur")),
+                        c.getString(c.getColumnIndexOrThrow("auteurPhotoUrl")),
+                        c.getString(c.getColumnIndexOrThrow("texte")));
+                comment.setId(c.getString(c.getColumnIndexOrThrow("id")));
+                comment.setDatePublication(date(c, "datePublication"));
+                list.add(comment);
+            }
+        }
+        return list;
+    }
+
+    // --- Notifications ---
+
+    /** Remplace les notifications connues d'un utilisateur par la dernière liste reçue. */
+    public void replaceNotifications(String userId, List<NotificationApp> notifications) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(T_NOTIFICATIONS, "idDestinataire = ?", new String[] { userId });
+            for (NotificationApp n : notifications) {
+                if (n.getId() == null) continue;
+                ContentValues v = new ContentValues();
+                v.put("id", n.getId());
+                v.put("idDestinataire", userId);
+                v.put("titre", n.getTitre());
+                v.put("message", n.getMessage());
+                v.put("type", n.getType());
+                v.put("idIncidentSource", n.getIdIncidentSource());
+                v.put("nomExpediteur", n.getNomExpediteur());
+                v.put("lu", n.isLu() ? 1 : 0);
+                v.put("date", millis(n.getDate()));
+                db.insertWithOnConflict(T_NOTIFICATIONS, null, v, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public List<NotificationApp> getNotifications(String userId) {
+        List<NotificationApp> list = new ArrayList<>();
+        try (Cursor c = getReadableDatabase().query(T_NOTIFICATIONS, null, "idDestinataire = ?", new String[] { userId },
+                null, null, "date DESC")) {
+            while (c.moveToNext()) {
+                NotificationApp n = new NotificationApp(
+                        c.getString(c.getColumnIndexOrThrow("titre")),
+                        c.getString(c.getColumnIndexOrThrow("message")),
+                        c.getString(c.getColumnIndexOrThrow("type")),
+                        userId,
+                        c.getString(c.getColumnIndexOrThrow("idIncidentSource")),
+                        c.getString(c.getColumnIndexOrThrow("nomExpediteur")));
+                n.setId(c.getString(c.getColumnIndexOrThrow("id")));
+                n.setLu(c.getInt(c.getColumnIndexOrThrow("lu")) == 1);
+                n.setDate(date(c, "date"));
+                list.add(n);
+            }
+        }
+        return list;
+    }
+
+    // --- Outbox des signalements ---
+
+    public void insertOutbox(IncidentOutbox.Entry entry) {
+        Incident inc = entry.incident;
+        ContentValues v = new ContentValues();
+        v.put("id", entry.id);
+        v.put("idUtilisateur", inc.getIdUtilisateur());
+        v.put("nomUtilisateur", inc.getNomUtilisateur());
+        v.put("auteurPhotoUrl", inc.getAuteurPhotoUrl());
+        v.put("description", inc.getDescription());
+        v.put("idCategorie", inc.getIdCategorie());
+        v.put("nomCategorie", inc.getNomCategorie());
+        v.put("latitude", inc.getLatitude());
+        v.put("longitude", inc.getLongitude());
+        v.put("dateSignalement", millis(inc.getDateSignalement()));
+        v.put("photoPath", entry.photoPath);
+        v.put("photoUrl", inc.getPhotoUrl());
+        v.put("attempts", entry.attempts);
+        v.put("committed", entry.committed ? 1 : 0);
+        v.put("createdAt", System.currentTimeMillis());
+        getWritableDatabase().insertWithOnConflict(T_OUTBOX, null, v, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Signalements en attente de l'utilisateur {@code uid}, du plus ancien au plus récent.
+     * Ceux qui ont déjà été tentés {@code maxAttempts} fois sont écartés : ils restent en base,
+     * mais ne sont plus renvoyés.
+     */
+    public List<IncidentOutbox.Entry> getOutbox(String uid, int maxAttempts) {
+        List<IncidentOutbox.Entry> list = new ArrayList<>();
+        try (Cursor c = getReadableDatabase().query(T_OUTBOX, null, "idUtilisateur = ? AND attempts < ?",
+                new String[] { uid, String.valueOf(maxAttempts) }, null, null, "createdAt ASC")) {
+            while (c.moveToNext()) {
+                Incident inc = new Incident();
+                inc.setId(c.getString(c.getColumnIndexOrThrow("id")));
+                inc.setIdUtilisateur(c.getString(c.getColumnIndexOrThrow("idUtilisateur")));
+                inc.setNomUtilisateur(c.getString(c.getColumnIndexOrThrow("nomUtilisateur")));
+                inc.setAuteurPhotoUrl(c.getString(c.getColumnIndexOrThrow("auteurPhotoUrl")));
+                inc.setDescription(c.getString(c.getColumnIndexOrThrow("description")));
+                inc.setIdCategorie(c.getString(c.getColumnIndexOrThrow("idCategorie")));
+                inc.setNomCategorie(c.getString(c.getColumnIndexOrThrow("nomCategorie")));
+                inc.setLatitude(c.getDouble(c.getColumnIndexOrThrow("latitude")));
+                inc.setLongitude(c.getDouble(c.getColumnIndexOrThrow("longitude")));
+                inc.setDateSignalement(date(c, "dateSignalement"));
+                inc.setPhotoUrl(c.getString(c.getColumnIndexOrThrow("photoUrl")));
+                inc.setStatut(Incident.STATUT_NOUVEAU);
+                list.add(new IncidentOutbox.Entry(inc.getId(), inc,
+                        c.getString(c.getColumnIndexOrThrow("photoPath")),
+                        c.getInt(c.getColumnIndexOrThrow("attempts")),
+                        c.getInt(c.getColumnIndexOrThrow("committed")) != 0));
+            }
+        }
+        return list;
+    }
+
+    public void setOutboxPhotoUrl(String id, String photoUrl) {
+        ContentValues v = new ContentValues();
+        v.put("photoUrl", photoUrl);
+        getWritableDatabase().update(T_OUTBOX, v, "id = ?", new String[] { id });
+    }
+
+    /** Le document Firestore existe : seule la photo reste éventuellement à rattacher. */
+    public void setOutboxCommitted(String id) {
+        ContentValues v = new ContentValues();
+        v.put("committed", 1);
+        getWritableDatabase().update(T_OUTBOX, v, "id = ?", new String[] { id });
+    }
+
+    public void incrementOutboxAttempts(String id) {
+        getWritableDatabase().execSQL("UPDATE " + T_OUTBOX + " SET attempts = attempts + 1 WHERE id = ?",
+                new Object[] { id });
+    }
+
+    public void deleteOutbox(String id) {
+        getWritableDatabase().delete(T_OUTBOX, "id = ?", new String[] { id });
+    }
+
+    // --- État de synchronisation ---
+
+    public long getWatermark(String name) {
+        try (Cursor c = getReadableDatabase().query(T_SYNC_STATE, new String[] { "watermark" }, "name = ?",
+                new String[] { name }, null, null, null)) {
+            return c.moveToFirst() ? c.getLong(0) : 0;
+        }
+    }
+
+    /** Identifiant du dernier document lu au repère {@code name} (départage à valeur égale), ou null. */
+    public String getWatermarkDocumentId(String name) {
+        try (Cursor c = getReadableDatabase().query(T_SYNC_STATE, new String[] { "documentId" }, "name = ?",
+                new String[] { name }, null, null, null)) {
+            return c.moveToFirst() ? c.getString(0) : null;
+        }
+    }
+
+    public void setWatermark(String name, long watermark) {
+        setWatermark(name, watermark, null);
+    }
+
+    public void setWatermark(String name, long watermark, String documentId) {
+        ContentValues v = new ContentValues();
+        v.put("name", name);
+        v.put("watermark", watermark);
+        v.put("documentId", documentId);
+        getWritableDatabase().insertWithOnConflict(T_SYNC_STATE, null, v, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Efface les données locales synchronisées (déconnexion).
+     * L'outbox est conservée : ses signalements seront envoyés à la prochaine connexion.
+     */
+    public void clear() {
+        SQLiteDatabase db = getWritableDatabase();
+        db.delete(T_INCIDENTS, null, null);
+        db.delete(T_COMMENTS, null, null);
+        db.delete(T_NOTIFICATIONS, null, null);
+        db.delete(T_SYNC_STATE, null, null);
+    }
+
+    // --- Conversions ---
+
+    private static ContentValues toValues(Incident inc) {
+        ContentValues v = new ContentValues();
+        v.put("id", inc.getId());
+        v.put("idUtilisateur", inc.getIdUtilisateur());
+        v.put("nomUtilisateur", inc.getNomUtilisateur());
+        v.put("auteurPhotoUrl", inc.getAuteurPhotoUrl());
+        v.put("description", inc.getDescription());
+        v.put("photoUrl", inc.getPhotoUrl());
+        v.put("videoUrl", inc.getVideoUrl());
+        v.put("idCategorie", inc.getIdCategorie());
+        v.put("nomCategorie", inc.getNomCategorie());
+        v.put("statut", inc.getStatut());
+        v.put("latitude", inc.getLatitude());
+        v.put("longitude", inc.getLongitude());
+        v.put("geohash", inc.getGeohash());
+        v.put("dateSignalement", millis(inc.getDateSignalement()));
+        v.put("likesCount", inc.getLikesCount());
+        v.put("commentsCount", inc.getCommentsCount());
+        v.put("updatedAt", millis(inc.getUpdatedAt()));
+        return v;
+    }
+
+    private static Incident incidentFrom(Cursor c) {
+        Incident inc = new Incident();
+        inc.setId(c.getString(c.getColumnIndexOrThrow("id")));
+        inc.setIdUtilisateur(c.getString(c.getColumnIndexOrThrow("idUtilisateur")));
+        inc.setNomUtilisateur(c.getString(c.getColumnIndexOrThrow("nomUtilisateur")));
+        inc.setAuteurPhotoUrl(c.getString(c.getColumnIndexOrThrow("auteurPhotoUrl")));
+        inc.setDescription(c.getString(c.getColumnIndexOrThrow("description")));
+        inc.setPhotoUrl(c.getString(c.getColumnIndexOrThrow("photoUrl")));
+        inc.setVideoUrl(c.getString(c.getColumnIndexOrThrow("videoUrl")));
+        inc.setIdCategorie(c.getString(c.getColumnIndexOrThrow("idCategorie")));
+        inc.setNomCategorie(c.getString(c.getColumnIndexOrThrow("nomCategorie")));
+        inc.setStatut(c.getString(c.getColumnIndexOrThrow("statut")));
+        inc.setLatitude(c.getDouble(c.getColumnIndexOrThrow("latitude")));
+        inc.setLongitude(c.getDouble(c.getColumnIndexOrThrow("longitude")));
+        inc.setGeohash(c.getString(c.getColumnIndexOrThrow("geohash")));
+        inc.setDateSignalement(date(c, "dateSignalement"));
+        inc.setLikesCount(c.getInt(c.getColumnIndexOrThrow("likesCount")));
+        inc.setCommentsCount(c.getInt(c.getColumnIndexOrThrow("commentsCount")));
+        inc.setUpdatedAt(date(c, "updatedAt"));
+        return inc;
+    }
+
+    private static Long millis(Date date) {
+        return date != null ? date.getTime() : null;
+    }
+
+    private static Date date(Cursor c, String column) {
+        int index = c.getColumnIndexOrThrow(column);
+        return c.isNull(index) ? null : new Date(c.getLong(index));
+    }
+}
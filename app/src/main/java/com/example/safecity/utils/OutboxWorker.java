@@ -0,0 +1,180 @@
+package com.example.safecity.utils;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.work.Data;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.safecity.model.Incident;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageReference;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Vide l'outbox des signalements (IncidentOutbox), par lots.
+ * Les photos partent vers incident_images/{id}.jpg pendant que les documents du lot sont créés
+ * (une transaction avec les points des auteurs) : le signalement est visible après un seul
+ * aller-retour, et son URL de photo est rattachée dès la fin de l'envoi.
+ * Chaque étape est notée dans l'outbox : une reprise après coupure ne crée ni doublon
+ * ni points en double, et ne renvoie que ce qui manque.
+ * Un échec ne concerne que son signalement : les autres continuent. Après {@link #MAX_ATTEMPTS}
+ * essais, un signalement non publié est mis de côté (il reste en base mais n'est plus renvoyé),
+ * et un signalement publié dont la photo ne part pas est gardé sans photo.
+ */
+public class OutboxWorker extends Worker {
+
+    /** Signalements publiés (document créé, points attribués) par cette exécution. */
+    public static final String KEY_SENT = "sent";
+    /** Signalements abandonnés par cette exécution après {@link #MAX_ATTEMPTS} essais. */
+    public static final String KEY_FAILED = "failed";
+    public static final String KEY_TOTAL = "total";
+
+    /** Nombre de signalements publiés par transaction. */
+    public static final int BATCH_SIZE = 10;
+    /** Nombre d'essais d'envoi d'un signalement avant de le mettre de côté. */
+    public static final int MAX_ATTEMPTS = 5;
+
+    private int sent;
+    private int failed;
+    private int total;
+
+    public OutboxWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        String uid = FirebaseAuth.getInstance().getUid();
+        // Personne de connecté : MainActivity relancera l'envoi à la prochaine session
+        if (uid == null) return Result.success();
+
+        LocalStore store = LocalStore.getInstance(getApplicationContext());
+        FirestoreRepository repo = new FirestoreRepository("outbox");
+        // Liste figée au départ : un signalement en échec n'est pas repris dans la même exécution
+        List<IncidentOutbox.Entry> outbox = store.getOutbox(uid, MAX_ATTEMPTS);
+        total = outbox.size();
+        boolean retry = false;
+
+        for (int start = 0; start < outbox.size(); start += BATCH_SIZE) {
+            List<IncidentOutbox.Entry> entries = outbox.subList(start, Math.min(outbox.size(), start + BATCH_SIZE));
+
+            // 1. Les envois de photos démarrent tout de suite...
+            Map<String, Task<Uri>> uploads = new HashMap<>();
+            for (IncidentOutbox.Entry entry : entries) {
+                store.incrementOutboxAttempts(entry.id);
+                if (needsUpload(entry)) uploads.put(entry.id, upload(entry));
+            }
+
+            // 2. ...pendant que les documents sont créés, sans attendre les photos
+            Set<String> committed = new HashSet<>();
+            List<Incident> pending = new ArrayList<>();
+            for (IncidentOutbox.Entry entry : entries) {
+                if (entry.committed) {
+                    committed.add(entry.id);
+                    continue;
+                }
+                if (entry.incident.getPhotoUrl() == null) entry.incident.setPhotoUrl("");
+                pending.add(entry.incident);
+            }
+            for (Incident inc : commit(repo, pending)) {
+                store.setOutboxCommitted(inc.getId());
+                committed.add(inc.getId());
+                sent++;
+            }
+            reportProgress();
+
+            // 3. Les URL des photos sont rattachées au fur et à mesure
+            for (IncidentOutbox.Entry entry : entries) {
+                boolean lastAttempt = entry.attempts + 1 >= MAX_ATTEMPTS;
+                if (!committed.contains(entry.id)) {
+                    if (lastAttempt) failed++;
+                    else retry = true;
+                    continue;
+                }
+                try {
+                    Task<Uri> upload = uploads.get(entry.id);
+                    String url = upload != null ? Tasks.await(upload).toString() : entry.incident.getPhotoUrl();
+                    if (upload != null) store.setOutboxPhotoUrl(entry.id, url);
+                    if (entry.photoPath != null && url != null && !url.isEmpty()) {
+                        Tasks.await(repo.setIncidentPhotoUrl(entry.id, url));
+                    }
+                } catch (Exception e) {
+                    // Le signalement est publié : après le dernier essai, il reste sans photo
+                    if (!lastAttempt) {
+                        retry = true;
+                        continue;
+                    }
+                }
+                store.deleteOutbox(entry.id);
+                IncidentOutbox.deletePhoto(entry.photoPath);
+            }
+            reportProgress();
+        }
+
+        return retry ? Result.retry() : Result.success(progress());
+    }
+
+    /**
+     * Publie {@code incidents} dans une seule transaction. Si elle échoue, chaque signalement
+     * est retenté seul : un document refusé ne bloque pas le reste du lot.
+     * Retourne les signalements publiés.
+     */
+    private static List<Incident> commit(FirestoreRepository repo, List<Incident> incidents) {
+        if (incidents.isEmpty()) return incidents;
+        try {
+            Tasks.await(repo.commitOutboxIncidents(incidents));
+            return incidents;
+        } catch (Exception batchError) {
+            if (incidents.size() == 1) return new ArrayList<>();
+        }
+        List<Incident> published = new ArrayList<>();
+        for (Incident inc : incidents) {
+            try {
+                Tasks.await(repo.commitOutboxIncidents(Collections.singletonList(inc)));
+                published.add(inc);
+            } catch (Exception e) {
+                // Cet essai est compté dans l'outbox ; le signalement sera repris ou mis de côté
+            }
+        }
+        return published;
+    }
+
+    private Data progress() {
+        return new Data.Builder().putInt(KEY_SENT, sent).putInt(KEY_FAILED, failed).putInt(KEY_TOTAL, total).build();
+    }
+
+    private void reportProgress() {
+        setProgressAsync(progress());
+    }
+
+    private static boolean needsUpload(IncidentOutbox.Entry entry) {
+        String url = entry.incident.getPhotoUrl();
+        return (url == null || url.isEmpty()) && entry.photoPath != null && new File(entry.photoPath).exists();
+    }
+
+    private static Task<Uri> upload(IncidentOutbox.Entry entry) {
+        // Nom déterministe : un nouvel essai remplace le même fichier au lieu d'en créer un autre
+        StorageReference ref = FirebaseStorage.getInstance().getReference()
+                .child("incident_images/" + entry.id + ".jpg");
+        return ref.putFile(Uri.fromFile(new File(entry.photoPath)))
+                .continueWithTask(task -> {
+                    if (!task.isSuccessful()) throw task.getException();
+                    return ref.getDownloadUrl();
+                });
+    }
+}
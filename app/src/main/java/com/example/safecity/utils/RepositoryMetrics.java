@@ -0,0 +1,296 @@
+package com.example.safecity.utils;
+
+import android.os.SystemClock;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.GeoPoint;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Mesures des opérations de FirestoreRepository, par écran appelant et par opération :
+ * documents lus (serveur / cache local), taille estimée, écritures, temps jusqu'au premier
+ * résultat et durée de vie des écoutes. Sert à repérer les lectures à supprimer.
+ * Les documents « serveur » suivent la facturation : premier snapshot complet, puis seulement
+ * les documents ajoutés ou modifiés ; une requête serveur vide compte pour une lecture.
+ * L'estimation de la taille relit les champs de chaque document : elle n'est active que si
+ * {@link #setSizeEstimation} l'a demandé (builds de debug), le comptage seul est presque gratuit.
+ * Les écoutes partagées entre écrans (SharedQueryRegistry) sont comptées sous l'écran
+ * {@link #SHARED_SCREEN} ; chaque écran abonné n'y ajoute que son abonnement et son premier résultat.
+ */
+public class RepositoryMetrics {
+
+    /** Écran sous lequel sont comptées les lectures des écoutes partagées. */
+    public static final String SHARED_SCREEN = "partagé";
+
+    /** Compteurs d'une opération pour un écran (copie figée, sûre à lire). */
+    public static class OperationStats {
+        public final String screen;
+        public final String operation;
+        public long calls;
+        public long errors;
+        public long docsFromServer;
+        public long docsFromCache;
+        public long bytes;
+        public long writes;
+        public long firstResultCount;
+        public long firstResultTotalMs;
+        public long firstResultMaxMs;
+        public long listenersActive;
+        public long listenersClosed;
+        public long listenerLifetimeTotalMs;
+
+        OperationStats(String screen, String operation) {
+            this.screen = screen;
+            this.operation = operation;
+        }
+
+        OperationStats copy() {
+            OperationStats c = new OperationStats(screen, operation);
+            c.calls = calls;
+            c.errors = errors;
+            c.docsFromServer = docsFromServer;
+            c.docsFromCache = docsFromCache;
+            c.bytes = bytes;
+            c.writes = writes;
+            c.firstResultCount = firstResultCount;
+            c.firstResultTotalMs = firstResultTotalMs;
+            c.firstResultMaxMs = firstResultMaxMs;
+            c.listenersActive = listenersActive;
+            c.listenersClosed = listenersClosed;
+            c.listenerLifetimeTotalMs = listenerLifetimeTotalMs;
+            return c;
+        }
+
+        public long averageFirstResultMs() {
+            return firstResultCount == 0 ? 0 : firstResultTotalMs / firstResultCount;
+        }
+    }
+
+    /**
+     * Suivi d'un appel (lecture ponctuelle ou écoute). Créé par {@link #start}.
+     */
+    public class Tracker {
+        private final OperationStats stats;
+        private final long startedAt = SystemClock.elapsedRealtime();
+        private boolean firstResultSeen = false;
+        private boolean firstServerSnapshotSeen = false;
+
+        Tracker(OperationStats stats) {
+            this.stats = stats;
+        }
+
+        public void onQuerySnapshot(QuerySnapshot snapshot) {
+            if (snapshot == null) return;
+            boolean fromCache = snapshot.getMetadata().isFromCache();
+            boolean measure = sizeEstimation;
+            long docs = 0;
+            long bytes = 0;
+            if (fromCache || !firstServerSnapshotSeen) {
+                docs = snapshot.size();
+                if (measure) {
+                    for (DocumentSnapshot doc : snapshot.getDocuments()) bytes += estimateSize(doc);
+                }
+                // Une requête serveur sans résultat est facturée une lecture
+                if (!fromCache && docs == 0) docs = 1;
+            } else {
+                for (DocumentChange dc : snapshot.getDocumentChanges()) {
+                    if (dc.getType() == DocumentChange.Type.REMOVED) continue;
+                    docs++;
+                    if (measure) bytes += estimateSize(dc.getDocument());
+                }
+            }
+            if (!fromCache) firstServerSnapshotSeen = true;
+            record(fromCache, docs, bytes);
+        }
+
+        public void onDocumentSnapshot(DocumentSnapshot snapshot) {
+            if (snapshot == null) return;
+            record(snapshot.getMetadata().isFromCache(), 1, sizeEstimation ? estimateSize(snapshot) : 0);
+        }
+
+        /**
+         * Résultat reçu d'une écoute partagée : les lectures sont comptées sous {@link #SHARED_SCREEN},
+         * seul le délai jusqu'au premier résultat revient à l'écran abonné.
+         */
+        public void onSharedResult() {
+            markFirstResult();
+        }
+
+        /** Lectures faites dans une transaction (toujours côté serveur). */
+        public void onTransactionReads(int docs) {
+            record(false, docs, 0);
+        }
+
+        /** Agrégat count() : une lecture par tranche de 1000 entrées d'index (au moins une). */
+        public void onAggregateRead(long count) {
+            record(false, Math.max(1, (count + 999) / 1000), 0);
+        }
+
+        public void onWrites(int count) {
+            synchronized (RepositoryMetrics.this) {
+                stats.writes += count;
+            }
+            markFirstResult();
+        }
+
+        public void onError() {
+            synchronized (RepositoryMetrics.this) {
+                stats.errors++;
+            }
+        }
+
+        /** Enveloppe l'écoute pour mesurer sa durée de vie. */
+        public ListenerRegistration wrap(ListenerRegistration registration) {
+            synchronized (RepositoryMetrics.this) {
+                stats.listenersActive++;
+            }
+            return new ListenerRegistration() {
+                private boolean removed = false;
+
+                @Override
+                public void remove() {
+                    registration.remove();
+                    synchronized (RepositoryMetrics.this) {
+                        if (removed) return;
+                        removed = true;
+                        stats.listenersActive--;
+                        stats.listenersClosed++;
+                        stats.listenerLifetimeTotalMs += SystemClock.elapsedRealtime() - startedAt;
+                    }
+                }
+            };
+        }
+
+        private void record(boolean fromCache, long docs, long bytes) {
+            synchronized (RepositoryMetrics.this) {
+                if (fromCache) stats.docsFromCache += docs;
+                else stats.docsFromServer += docs;
+                stats.bytes += bytes;
+            }
+            markFirstResult();
+        }
+
+        private void markFirstResult() {
+            synchronized (RepositoryMetrics.this) {
+                if (firstResultSeen) return;
+                firstResultSeen = true;
+                long elapsed = SystemClock.elapsedRealtime() - startedAt;
+                stats.firstResultCount++;
+                stats.firstResultTotalMs += elapsed;
+                stats.firstResultMaxMs = Math.max(stats.firstResultMaxMs, elapsed);
+            }
+        }
+    }
+
+    private static RepositoryMetrics sInstance;
+
+    private final Map<String, OperationStats> stats = new HashMap<>();
+    private volatile boolean sizeEstimation = false;
+
+    private RepositoryMetrics() {}
+
+    public static synchronized RepositoryMetrics getInstance() {
+        if (sInstance == null) sInstance = new RepositoryMetrics();
+        return sInstance;
+    }
+
+    /** Active l'estimation de la taille des documents lus (coûteuse : à réserver au debug). */
+    public void setSizeEstimation(boolean enabled) {
+        sizeEstimation = enabled;
+    }
+
+    public synchronized Tracker start(String screen, String operation) {
+        String key = screen + "/" + operation;
+        OperationStats s = stats.get(key);
+        if (s == null) {
+            s = new OperationStats(screen, operation);
+            stats.put(key, s);
+        }
+        s.calls++;
+        return new Tracker(s);
+    }
+
+    /** Copie des compteurs, triée par documents lus sur le serveur (les plus coûteux d'abord). */
+    public synchronized List<OperationStats> getStats() {
+        List<OperationStats> list = new ArrayList<>(stats.size());
+        for (OperationStats s : stats.values()) list.add(s.copy());
+        Collections.sort(list, (a, b) -> Long.compare(b.docsFromServer, a.docsFromServer));
+        return list;
+    }
+
+    public synchronized void reset() {
+        stats.clear();
+    }
+
+    /** Rapport texte des compteurs, pour le menu d'administration ou logcat. */
+    public String dump() {
+        List<OperationStats> list = getStats();
+        long server = 0, cache = 0, writes = 0;
+        StringBuilder sb = new StringBuilder();
+        for (OperationStats s : list) {
+            server += s.docsFromServer;
+            cache += s.docsFromCache;
+            writes += s.writes;
+            sb.append(String.format(Locale.FRANCE,
+                    "%s · %s%n  appels %d, erreurs %d%n  lus serveur %d, cache %d, %s, écritures %d%n"
+                            + "  1er résultat moy. %d ms, max %d ms%n  écoutes actives %d, fermées %d, durée moy. %d s%n",
+                    s.screen, s.operation, s.calls, s.errors,
+                    s.docsFromServer, s.docsFromCache, sizeEstimation ? "~" + s.bytes / 1024 + " Ko" : "taille non mesurée",
+                    s.writes,
+                    s.averageFirstResultMs(), s.firstResultMaxMs,
+                    s.listenersActive, s.listenersClosed,
+                    s.listenersClosed == 0 ? 0 : s.listenerLifetimeTotalMs / s.listenersClosed / 1000));
+        }
+        sb.insert(0, String.format(Locale.FRANCE, "Total : %d lus serveur, %d lus cache, %d écritures%n%n",
+                server, cache, writes));
+        return sb.toString();
+    }
+
+    /**
+     * Taille estimée d'un document selon les règles de stockage Firestore :
+     * chemin du document + noms et valeurs des champs + 32 octets.
+     */
+    static long estimateSize(DocumentSnapshot doc) {
+        long size = doc.getReference().getPath().getBytes(StandardCharsets.UTF_8).length + 16 + 32;
+        Map<String, Object> data = doc.getData();
+        if (data != null) size += sizeOf(data);
+        return size;
+    }
+
+    private static long sizeOf(Object value) {
+        if (value == null || value instanceof Boolean) return 1;
+        if (value instanceof Number || value instanceof Timestamp || value instanceof Date) return 8;
+        if (value instanceof String) return ((String) value).getBytes(StandardCharsets.UTF_8).length + 1;
+        if (value instanceof GeoPoint) return 16;
+        if (value instanceof DocumentReference) {
+            return ((DocumentReference) value).getPath().getBytes(StandardCharsets.UTF_8).length + 16;
+        }
+        if (value instanceof Map) {
+            long size = 0;
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                size += String.valueOf(e.getKey()).getBytes(StandardCharsets.UTF_8).length + 1 + sizeOf(e.getValue());
+            }
+            return size;
+        }
+        if (value instanceof List) {
+            long size = 0;
+            for (Object item : (List<?>) value) size += sizeOf(item);
+            return size;
+        }
+        if (value instanceof byte[]) return ((byte[]) value).length;
+        return 8;
+    }
+}
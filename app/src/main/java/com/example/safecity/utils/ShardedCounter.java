@@ -0,0 +1,49 @@
+package com.example.safecity.utils;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Transaction;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compteurs distribués des incidents (likes, commentaires).
+ * Chaque interaction incrémente un fragment tiré au hasard parmi incidents/{id}/counters/{0..N-1}
+ * au lieu du document incident lui-même, ce qui répartit les écritures d'un incident très actif.
+ * La fonction planifiée rollupIncidentCounters reporte périodiquement les fragments dans
+ * likesCount / commentsCount : les lecteurs continuent de lire une seule valeur.
+ * Une fois reportés, les fragments sont remis à zéro : likesCount / commentsCount ne doivent donc
+ * jamais être écrits par le client (hors création de l'incident, à zéro). Une réécriture complète
+ * du document depuis une copie ancienne effacerait pour de bon les totaux déjà reportés ; les mises
+ * à jour de l'incident passent par update() sur leurs seuls champs (updateIncidentDetails).
+ */
+public final class ShardedCounter {
+
+    public static final int NUM_SHARDS = 10;
+
+    public static final String FIELD_LIKES = "likes";
+    public static final String FIELD_COMMENTS = "comments";
+
+    private static final String COL_COUNTERS = "counters";
+
+    private ShardedCounter() {}
+
+    public static DocumentReference randomShard(DocumentReference incidentRef) {
+        int shard = ThreadLocalRandom.current().nextInt(NUM_SHARDS);
+        return incidentRef.collection(COL_COUNTERS).document(String.valueOf(shard));
+    }
+
+    /**
+     * Ajoute {@code delta} au compteur {@code field} sur un fragment aléatoire, dans la transaction.
+     */
+    public static void increment(Transaction transaction, DocumentReference incidentRef, String field, long delta) {
+        Map<String, Object> update = new HashMap<>();
+        update.put(field, FieldValue.increment(delta));
+        // Repère utilisé par le report périodique pour ne traiter que les fragments modifiés
+        update.put("updatedAt", FieldValue.serverTimestamp());
+        transaction.set(randomShard(incidentRef), update, SetOptions.merge());
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.safecity.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.firebase.firestore.ListenerRegistration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Partage une même écoute Firestore entre tous les écrans qui demandent la même requête.
+ * Le premier abonné attache l'écoute, les suivants reçoivent immédiatement la dernière valeur,
+ * et l'écoute est détachée après un court délai de grâce quand le dernier abonné part
+ * (ce qui évite de la recréer lors d'un simple changement d'onglet).
+ * Toutes les méthodes sont appelées sur le thread principal.
+ */
+public class SharedQueryRegistry {
+
+    public static final long DEFAULT_GRACE_PERIOD_MS = 5000;
+
+    /** Ouvre l'écoute réelle ; appelé une seule fois par requête partagée. */
+    public interface Source<T> {
+        ListenerRegistration attach(FirestoreRepository.OnListChangedListener<T> sink);
+    }
+
+    private static class Entry<T> {
+        final String key;
+        final List<FirestoreRepository.OnListChangedListener<T>> subscribers = new ArrayList<>();
+        ListenerRegistration upstream;
+        List<T> lastValue;
+        Runnable pendingDetach;
+
+        Entry(String key) {
+            this.key = key;
+        }
+    }
+
+    private static SharedQueryRegistry sInstance;
+
+    private final Map<String, Entry<?>> entries = new HashMap<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final long gracePeriodMs;
+
+    private SharedQueryRegistry(long gracePeriodMs) {
+        this.gracePeriodMs = gracePeriodMs;
+    }
+
+    public static synchronized SharedQueryRegistry getInstance() {
+        if (sInstance == null) sInstance = new SharedQueryRegistry(DEFAULT_GRACE_PERIOD_MS);
+        return sInstance;
+    }
+
+    /**
+     * Abonne {@code listener} à la requête identifiée par {@code key}.
+     * La registration retournée ne retire que cet abonné.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ListenerRegistration subscribe(String key, Source<T> source,
+                                              FirestoreRepository.OnListChangedListener<T> listener) {
+        Entry<T> entry = (Entry<T>) entries.get(key);
+        if (entry == null) {
+            entry = new Entry<>(key);
+            entries.put(key, entry);
+            entry.subscribers.add(listener);
+            entry.upstream = source.attach(fanOut(entry));
+        } else {
+            if (entry.pendingDetach != null) {
+                handler.removeCallbacks(entry.pendingDetach);
+                entry.pendingDetach = null;
+            }
+            entry.subscribers.add(listener);
+            if (entry.lastValue != null) {
+                final Entry<T> current = entry;
+                final List<T> cached = entry.lastValue;
+                // null : le nouvel abonné doit tout afficher, il n'a pas d'état précédent
+                handler.post(() -> {
+                    if (current.subscribers.contains(listener)) listener.onListChanged(cached, null);
+                });
+            }
+        }
+
+        final Entry<T> subscribed = entry;
+        return () -> unsubscribe(subscribed, listener);
+    }
+
+    private <T> FirestoreRepository.OnListChangedListener<T> fanOut(Entry<T> entry) {
+        return new FirestoreRepository.OnListChangedListener<T>() {
+            @Override
+            public void onListChanged(List<T> items, List<KeyedSnapshotList.Change> changes) {
+                entry.lastValue = items;
+                for (FirestoreRepository.OnListChangedListener<T> l : new ArrayList<>(entry.subscribers)) {
+                    l.onListChanged(items, changes);
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                // Une écoute en erreur est terminée par Firestore : le prochain abonné en rouvrira une
+                if (entries.get(entry.key) == entry) entries.remove(entry.key);
+                for (FirestoreRepository.OnListChangedListener<T> l : new ArrayList<>(entry.subscribers)) {
+                    l.onError(e);
+                }
+            }
+        };
+    }
+
+    private <T> void unsubscribe(Entry<T> entry, FirestoreRepository.OnListChangedListener<T> listener) {
+        if (!entry.subscribers.remove(listener) || !entry.subscribers.isEmpty()) return;
+
+        entry.pendingDetach = () -> {
+            entry.pendingDetach = null;
+            if (!entry.subscribers.isEmpty()) return;
+            if (entry.upstream != null) {
+                entry.upstream.remove();
+                entry.upstream = null;
+            }
+            if (entries.get(entry.key) == entry) entries.remove(entry.key);
+        };
+        handler.postDelayed(entry.pendingDetach, gracePeriodMs);
+    }
+}
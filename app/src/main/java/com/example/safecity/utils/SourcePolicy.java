@@ -0,0 +1,19 @@
+package com.example.safecity.utils;
+
+/**
+ * Origine des données pour les lectures ponctuelles du repository (getIncident, getUser, getMyIncidents).
+ * Le cache est celui, persistant, de Firestore (taille bornée dans SafeCityApplication).
+ */
+public enum SourcePolicy {
+    /** Le cache s'il contient le document, sinon le serveur. Un seul résultat. */
+    CACHE_THEN_SERVER,
+    /** Le cache uniquement ; erreur si le document n'y est pas. */
+    CACHE_ONLY,
+    /** Le serveur uniquement (échoue hors ligne). */
+    SERVER_ONLY,
+    /**
+     * Le cache tout de suite s'il contient le document, puis le serveur : le listener est rappelé
+     * une seconde fois seulement si la version serveur diffère. Hors ligne, la version en cache reste.
+     */
+    STALE_WHILE_REVALIDATE
+}
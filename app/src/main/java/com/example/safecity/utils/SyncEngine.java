@@ -0,0 +1,175 @@
+package com.example.safecity.utils;
+
+import android.content.Context;
+
+import com.example.safecity.model.Comment;
+import com.example.safecity.model.Incident;
+import com.example.safecity.model.NotificationApp;
+import com.google.firebase.Timestamp;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Synchronise la base locale (LocalStore) avec Firestore par deltas.
+ * Seuls les incidents situés après le dernier repère enregistré sont téléchargés, page par page :
+ * le repère est le couple (updatedAt, id) du dernier incident lu, updatedAt gardé à la microseconde
+ * comme Firestore. Les suppressions arrivent par les marqueurs deleted_incidents.
+ * Les écritures faites hors ligne passent par la file persistante de Firestore, et les nouveaux
+ * signalements par IncidentOutbox : le moteur ne fait que tirer.
+ */
+public class SyncEngine {
+
+    public static final int PAGE_SIZE = 200;
+    /** Au premier lancement, on ne rapatrie que l'activité récente. */
+    public static final long INITIAL_WINDOW_MS = 30L * 24 * 60 * 60 * 1000;
+
+    // Repère des incidents en microsecondes, avec l'id du dernier incident lu
+    private static final String WATERMARK_INCIDENTS = "incidents";
+    private static final String WATERMARK_DELETIONS = "incidents_deleted";
+
+    public interface OnSyncListener {
+        void onSyncComplete(int changed);
+        void onError(Exception e);
+    }
+
+    private static SyncEngine sInstance;
+
+    private final LocalStore store;
+    private final FirestoreRepository repo = new FirestoreRepository("sync");
+    private final Executor disk = AppExecutors.getInstance().diskIO();
+    private boolean running = false;
+
+    private SyncEngine(Context context) {
+        this.store = LocalStore.getInstance(context);
+    }
+
+    public static synchronized SyncEngine getInstance(Context context) {
+        if (sInstance == null) sInstance = new SyncEngine(context);
+        return sInstance;
+    }
+
+    /**
+     * Lance une synchronisation des incidents, sauf si une est déjà en cours.
+     * Le listener (facultatif) est appelé sur le thread principal.
+     */
+    public synchronized void syncIncidents(OnSyncListener listener) {
+        if (running) return;
+        running = true;
+        disk.execute(() -> {
+            long watermark = store.getWatermark(WATERMARK_INCIDENTS);
+            String lastId = store.getWatermarkDocumentId(WATERMARK_INCIDENTS);
+            if (watermark == 0) {
+                watermark = (System.currentTimeMillis() - INITIAL_WINDOW_MS) * 1000;
+                lastId = null;
+            }
+            pullIncidents(toTimestamp(watermark), lastId, 0, listener);
+        });
+    }
+
+    /**
+     * Relit la base locale sur diskIO et livre les incidents récents sur le thread principal.
+     */
+    public void loadRecentIncidents(int limit, FirestoreRepository.OnDataLoadListener listener) {
+        disk.execute(() -> {
+            List<Incident> incidents = store.getRecentIncidents(limit);
+            AppExecutors.getInstance().mainThread().execute(() -> listener.onIncidentsLoaded(incidents));
+        });
+    }
+
+    /** Commentaires connus localement, livrés comme un rafraîchissement complet (changes == null). */
+    public void loadComments(String incidentId, FirestoreRepository.OnListChangedListener<Comment> listener) {
+        disk.execute(() -> {
+            List<Comment> comments = store.getComments(incidentId);
+            AppExecutors.getInstance().mainThread().execute(() -> listener.onListChanged(comments, null));
+        });
+    }
+
+    public void saveComments(String incidentId, List<Comment> comments) {
+        disk.execute(() -> store.replaceComments(incidentId, comments));
+    }
+
+    /** Notifications connues localement, livrées comme un rafraîchissement complet (changes == null). */
+    public void loadNotifications(String userId, FirestoreRepository.OnListChangedListener<NotificationApp> listener) {
+        disk.execute(() -> {
+            List<NotificationApp> notifications = store.getNotifications(userId);
+            AppExecutors.getInstance().mainThread().execute(() -> listener.onListChanged(notifications, null));
+        });
+    }
+
+    public void saveNotifications(String userId, List<NotificationApp> notifications) {
+        disk.execute(() -> store.replaceNotifications(userId, notifications));
+    }
+
+    public void removeIncident(String incidentId) {
+        disk.execute(() -> store.deleteIncidents(Collections.singletonList(incidentId)));
+    }
+
+    /**
+     * Efface la base locale (déconnexion).
+     */
+    public void clear() {
+        disk.execute(store::clear);
+    }
+
+    private void pullIncidents(Timestamp since, String afterId, int changedSoFar, OnSyncListener listener) {
+        repo.getIncidentsUpdatedSince(since, afterId, PAGE_SIZE, disk, new FirestoreRepository.OnSyncPageLoadedListener() {
+            @Override
+            public void onPageLoaded(List<Incident> incidents, Timestamp lastUpdatedAt, String lastId, boolean full) {
+                store.upsertIncidents(incidents);
+                if (lastUpdatedAt != null) store.setWatermark(WATERMARK_INCIDENTS, toMicros(lastUpdatedAt), lastId);
+
+                int changed = changedSoFar + incidents.size();
+                // Page pleine : il reste peut-être des modifications, la suivante part du dernier (updatedAt, id) lu
+                if (full && lastUpdatedAt != null) {
+                    pullIncidents(lastUpdatedAt, lastId, changed, listener);
+                } else {
+                    pullDeletions(changed, listener);
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                finish(listener, 0, e);
+            }
+        });
+    }
+
+    private void pullDeletions(int changed, OnSyncListener listener) {
+        long watermark = store.getWatermark(WATERMARK_DELETIONS);
+        repo.getDeletedIncidentsSince(new Date(watermark), disk, new FirestoreRepository.OnTombstonesLoadedListener() {
+            @Override
+            public void onTombstonesLoaded(List<String> ids, Date latest) {
+                store.deleteIncidents(ids);
+                store.setWatermark(WATERMARK_DELETIONS, latest.getTime());
+                finish(listener, changed + ids.size(), null);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                finish(listener, changed, e);
+            }
+        });
+    }
+
+    private static long toMicros(Timestamp t) {
+        return t.getSeconds() * 1_000_000L + t.getNanoseconds() / 1000;
+    }
+
+    private static Timestamp toTimestamp(long micros) {
+        return new Timestamp(Math.floorDiv(micros, 1_000_000L), (int) Math.floorMod(micros, 1_000_000L) * 1000);
+    }
+
+    private void finish(OnSyncListener listener, int changed, Exception error) {
+        synchronized (this) {
+            running = false;
+        }
+        if (listener == null) return;
+        AppExecutors.getInstance().mainThread().execute(() -> {
+            if (error != null) listener.onError(error);
+            else listener.onSyncComplete(changed);
+        });
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.safecity.utils;
+
+import android.os.SystemClock;
+import android.util.LruCache;
+
+import com.example.safecity.model.Utilisateur;
+import com.google.firebase.firestore.ListenerRegistration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache mémoire borné (LRU) des profils utilisateurs, avec durée de validité.
+ * Les demandes concurrentes pour un même uid partagent un seul chargement réseau.
+ * Le profil de l'utilisateur connecté est tenu à jour par une écoute sur son document
+ * et ne périme donc pas tant que cette écoute est active.
+ * Chaque appelant reçoit sa propre copie du profil : modifier l'objet reçu ne touche ni le cache
+ * ni les autres écrans.
+ */
+public class UserCache {
+
+    public static final int MAX_ENTRIES = 100;
+    public static final long TTL_MS = 5 * 60 * 1000;
+
+    private static class Entry {
+        final Utilisateur user;
+        final long loadedAt;
+
+        Entry(Utilisateur user) {
+            this.user = user;
+            this.loadedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    private static UserCache sInstance;
+
+    private final LruCache<String, Entry> cache = new LruCache<>(MAX_ENTRIES);
+    private final Map<String, List<FirestoreRepository.OnUserLoadedListener>> inFlight = new HashMap<>();
+    private String watchedUid;
+    private ListenerRegistration watchRegistration;
+
+    private UserCache() {}
+
+    public static synchronized UserCache getInstance() {
+        if (sInstance == null) sInstance = new UserCache();
+        return sInstance;
+    }
+
+    /**
+     * Retourne le profil en cache s'il est encore valide, sinon null.
+     */
+    public synchronized Utilisateur getFresh(String uid) {
+        Entry entry = cache.get(uid);
+        if (entry == null) return null;
+        if (uid.equals(watchedUid) && watchRegistration != null) return copy(entry.user);
+        if (SystemClock.elapsedRealtime() - entry.loadedAt > TTL_MS) {
+            cache.remove(uid);
+            return null;
+        }
+        return copy(entry.user);
+    }
+
+    public synchronized void put(Utilisateur user) {
+        if (user != null && user.getId() != null) cache.put(user.getId(), new Entry(copy(user)));
+    }
+
+    public synchronized void invalidate(String uid) {
+        cache.remove(uid);
+    }
+
+    /**
+     * Enregistre {@code listener} en attente du profil {@code uid}.
+     * @return true si l'appelant doit lancer le chargement, false si un chargement est déjà en cours.
+     */
+    synchronized boolean joinInFlight(String uid, FirestoreRepository.OnUserLoadedListener listener) {
+        List<FirestoreRepository.OnUserLoadedListener> waiting = inFlight.get(uid);
+        if (waiting != null) {
+            waiting.add(listener);
+            return false;
+        }
+        waiting = new ArrayList<>();
+        waiting.add(listener);
+        inFlight.put(uid, waiting);
+        return true;
+    }
+
+    /**
+     * Livre le profil à tous les appels en attente et les retourne (pour une éventuelle version plus fraîche).
+     */
+    List<FirestoreRepository.OnUserLoadedListener> completeInFlight(String uid, Utilisateur user) {
+        List<FirestoreRepository.OnUserLoadedListener> waiting;
+        synchronized (this) {
+            put(user);
+            waiting = inFlight.remove(uid);
+        }
+        if (waiting == null) return new ArrayList<>();
+        for (FirestoreRepository.OnUserLoadedListener l : waiting) l.onUserLoaded(copy(user));
+        return waiting;
+    }
+
+    void failInFlight(String uid, Exception e) {
+        List<FirestoreRepository.OnUserLoadedListener> waiting;
+        synchronized (this) {
+            waiting = inFlight.remove(uid);
+        }
+        if (waiting == null) return;
+        for (FirestoreRepository.OnUserLoadedListener l : waiting) l.onError(e);
+    }
+
+    synchronized void setWatch(String uid, ListenerRegistration registration) {
+        stopWatchLocked();
+        watchedUid = uid;
+        watchRegistration = registration;
+    }
+
+    /**
+     * L'écoute de {@code uid} a échoué (droits, document supprimé...) : elle ne tient plus
+     * le profil à jour, qui retrouve donc sa durée de validité normale.
+     */
+    synchronized void onWatchFailed(String uid) {
+        if (uid != null && uid.equals(watchedUid)) stopWatchLocked();
+    }
+
+    synchronized boolean isWatching(String uid) {
+        return uid != null && uid.equals(watchedUid) && watchRegistration != null;
+    }
+
+    /**
+     * Vide le cache et arrête l'écoute du profil courant (déconnexion).
+     */
+    public synchronized void clear() {
+        stopWatchLocked();
+        cache.evictAll();
+    }
+
+    private void stopWatchLocked() {
+        if (watchRegistration != null) {
+            watchRegistration.remove();
+            watchRegistration = null;
+        }
+        watchedUid = null;
+    }
+
+    static Utilisateur copy(Utilisateur user) {
+        Utilisateur copy = new Utilisateur(user.getId(), user.getNom(), user.getEmail(),
+                user.getIdRole(), user.getDateCreation());
+        copy.setMotDePasseHash(user.getMotDePasseHash());
+        copy.setPhotoProfilUrl(user.getPhotoProfilUrl());
+        copy.setScore(user.getScore());
+        return copy;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.safecity;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.example.safecity.utils.GeoHash;
+
+import java.util.List;
+
+/**
+ * Vérifie l'encodage geohash et la couverture d'une zone par les plages de requête.
+ */
+public class GeoHashTest {
+
+    @Test
+    public void encode_matchesReferenceValue() {
+        // Valeur de référence publiée pour l'algorithme geohash
+        assertEquals("u4pruydqqvj", GeoHash.encode(57.64911, 10.40744, 11));
+    }
+
+    @Test
+    public void queryRanges_coverPointsInsideTheBox() {
+        List<String[]> ranges = GeoHash.queryRanges(34.66, -1.95, 34.70, -1.88);
+        assertTrue(ranges.size() <= GeoHash.MAX_RANGES);
+
+        double[][] points = { {34.66, -1.95}, {34.70, -1.88}, {34.68, -1.90}, {34.695, -1.949} };
+        for (double[] p : points) {
+            String hash = GeoHash.encode(p[0], p[1], GeoHash.STORED_PRECISION);
+            boolean covered = false;
+            for (String[] r : ranges) {
+                if (hash.compareTo(r[0]) >= 0 && hash.compareTo(r[1]) <= 0) covered = true;
+            }
+            assertTrue("Point non couvert : " + hash, covered);
+        }
+    }
+
+    @Test
+    public void queryRanges_splitAtAntimeridian() {
+        List<String[]> ranges = GeoHash.queryRanges(34.0, 179.5, 35.0, -179.5);
+        assertTrue(ranges.size() >= 2);
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.safecity;
+
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.example.safecity.utils.GridClusteringAlgorithm;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.clustering.Cluster;
+import com.google.maps.android.clustering.ClusterItem;
+import com.google.maps.android.clustering.algo.Algorithm;
+import com.google.maps.android.clustering.algo.NonHierarchicalDistanceBasedAlgorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Vérifie le regroupement par grille et mesure son coût face à l'algorithme par défaut.
+ * Le benchmark ne tourne que sur demande : ./gradlew testDebugUnitTest -Dsafecity.benchmark=true
+ */
+public class GridClusteringAlgorithmTest {
+
+    private static final float[] ZOOMS = { 8, 10, 12, 14, 16 };
+    private static final int RUNS = 3;
+
+    private static class Point implements ClusterItem {
+        private final LatLng position;
+
+        Point(double lat, double lng) {
+            this.position = new LatLng(lat, lng);
+        }
+
+        @Override public LatLng getPosition() { return position; }
+        @Override public String getTitle() { return null; }
+        @Override public String getSnippet() { return null; }
+    }
+
+    /** Points répartis autour d'Oujda (environ 100 km de côté), graine fixe. */
+    private static List<Point> points(int count) {
+        Random random = new Random(42);
+        List<Point> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            points.add(new Point(34.68 + (random.nextDouble() - 0.5), -1.91 + (random.nextDouble() - 0.5)));
+        }
+        return points;
+    }
+
+    private static int itemCount(Set<? extends Cluster<Point>> clusters) {
+        int total = 0;
+        for (Cluster<Point> c : clusters) total += c.getSize();
+        return total;
+    }
+
+    @Test
+    public void getClusters_keepsEveryItemOnce_andCachesPerZoom() {
+        GridClusteringAlgorithm<Point> algo = new GridClusteringAlgorithm<>();
+        List<Point> points = points(1000);
+        algo.addItems(points);
+
+        Set<? extends Cluster<Point>> far = algo.getClusters(8);
+        Set<? extends Cluster<Point>> near = algo.getClusters(16);
+        assertEquals(points.size(), itemCount(far));
+        assertEquals(points.size(), itemCount(near));
+        assertTrue(far.size() < near.size());
+
+        // Même zoom entier : résultat en cache ; modification des éléments : recalcul
+        assertSame(far, algo.getClusters(8.7f));
+        algo.removeItem(points.get(0));
+        Set<? extends Cluster<Point>> after = algo.getClusters(8);
+        assertNotSame(far, after);
+        assertEquals(points.size() - 1, itemCount(after));
+    }
+
+    @Test
+    public void benchmark_gridVersusNonHierarchical() {
+        Assume.assumeTrue("benchmark désactivé (-Dsafecity.benchmark=true)", Boolean.getBoolean("safecity.benchmark"));
+
+        for (int count : Arrays.asList(1_000, 10_000, 100_000)) {
+            List<Point> points = points(count);
+            long grid = measure(GridClusteringAlgorithm::new, points);
+            long defaultAlgo = measure(NonHierarchicalDistanceBasedAlgorithm::new, points);
+            System.out.println(String.format(Locale.ROOT,
+                    "%,d points, %d zooms : grille %.1f ms, NonHierarchicalDistanceBased %.1f ms (x%.1f)",
+                    count, ZOOMS.length, grid / 1e6, defaultAlgo / 1e6, (double) defaultAlgo / Math.max(1, grid)));
+        }
+    }
+
+    /**
+     * Meilleur temps sur {@link #RUNS} essais (après un essai d'échauffement) pour regrouper
+     * les points à chaque zoom de {@link #ZOOMS}, sur une instance neuve (cache vide).
+     */
+    private static long measure(Supplier<Algorithm<Point>> factory, List<Point> points) {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run <= RUNS; run++) {
+            Algorithm<Point> algo = factory.get();
+            algo.addItems(points);
+            List<Set<? extends Cluster<Point>>> results = new ArrayList<>(ZOOMS.length);
+            long start = System.nanoTime();
+            for (float zoom : ZOOMS) results.add(algo.getClusters(zoom));
+            long elapsed = System.nanoTime() - start;
+            for (Set<? extends Cluster<Point>> clusters : results) assertEquals(points.size(), itemCount(clusters));
+            if (run > 0) best = Math.min(best, elapsed);
+        }
+        return best;
+    }
+}
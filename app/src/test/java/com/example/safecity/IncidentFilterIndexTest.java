@@ -0,0 +1,71 @@
+package com.example.safecity;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.example.safecity.model.Incident;
+import com.example.safecity.utils.IncidentFilterIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Vérifie que l'index statut × catégorie donne le même résultat que l'ancien filtrage linéaire,
+ * y compris après des mises à jour incrémentales.
+ */
+public class IncidentFilterIndexTest {
+
+    private static Incident incident(String id, String statut, String categorie, double lat) {
+        Incident inc = new Incident();
+        inc.setId(id);
+        inc.setStatut(statut);
+        inc.setNomCategorie(categorie);
+        inc.setLatitude(lat);
+        inc.setLongitude(-1.9);
+        return inc;
+    }
+
+    private static List<String> ids(List<Incident> incidents) {
+        List<String> ids = new ArrayList<>();
+        for (Incident inc : incidents) ids.add(inc.getId());
+        return ids;
+    }
+
+    @Test
+    public void query_intersectsStatusCategoryAndGeo_inSourceOrder() {
+        IncidentFilterIndex index = new IncidentFilterIndex();
+        index.update(Arrays.asList(
+                incident("a", "Nouveau", "Vol", 34.6),
+                incident("b", "traité", "Vol", 34.6),
+                incident("c", "NOUVEAU", " vol ", 34.7),
+                incident("d", "Nouveau", "Accident", 34.6),
+                incident("e", "Nouveau", "Vol", 0)));
+
+        assertEquals(Arrays.asList("a", "c"), ids(index.query(Incident.STATUT_NOUVEAU, "Vol", true)));
+        assertEquals(Arrays.asList("a", "c", "e"), ids(index.query(Incident.STATUT_NOUVEAU, "Vol", false)));
+        assertEquals(Arrays.asList("b"), ids(index.query(Incident.STATUT_TRAITE, null, true)));
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), ids(index.query(null, null, false)));
+        assertTrue(index.query(Incident.STATUT_EN_COURS, null, false).isEmpty());
+        assertTrue(index.query(null, "Incendie", false).isEmpty());
+    }
+
+    @Test
+    public void update_reindexesChangedInstancesAndDropsMissingOnes() {
+        IncidentFilterIndex index = new IncidentFilterIndex();
+        Incident a = incident("a", "Nouveau", "Vol", 34.6);
+        Incident b = incident("b", "Nouveau", "Vol", 34.6);
+        index.update(Arrays.asList(a, b));
+
+        // b passe à Traité (nouvelle instance), a disparaît, c arrive en tête
+        Incident b2 = incident("b", "Traité", "Vol", 34.6);
+        Incident c = incident("c", "Nouveau", "Vol", 34.6);
+        index.update(Arrays.asList(c, b2, c));
+
+        assertEquals(2, index.size());
+        assertEquals(Arrays.asList("c"), ids(index.query(Incident.STATUT_NOUVEAU, "Vol", true)));
+        assertEquals(Arrays.asList("b"), ids(index.query(Incident.STATUT_TRAITE, "Vol", true)));
+        assertSame(b2, index.query(Incident.STATUT_TRAITE, null, false).get(0));
+        assertEquals(Arrays.asList("c", "b"), ids(index.query(null, null, false)));
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Nettoyage de tout ce qui référence un incident supprimé : commentaires, fragments de compteurs,
+ * likes des utilisateurs, notifications et photos dans Storage.
+ * Les documents sont supprimés par pages bornées via un BulkWriter ; supprimer un document déjà
+ * absent ne fait rien, donc une nouvelle exécution après un échec reprend là où la précédente s'est arrêtée.
+ * Séparé de index.js pour être testé contre l'émulateur Firestore.
+ * La recherche des likes (collectionGroup("likes") filtré sur incidentId) s'appuie sur l'index
+ * COLLECTION_GROUP déclaré dans firestore.indexes.json, que l'émulateur n'exige pas.
+ */
+const { FieldPath } = require("firebase-admin/firestore");
+
+const PAGE_SIZE = 500;
+const IMAGES_PREFIX = "incident_images/";
+
+async function deletePages(query, writer) {
+    let deleted = 0;
+    let last = null;
+    for (;;) {
+        let page = query.orderBy(FieldPath.documentId()).limit(PAGE_SIZE);
+        if (last) page = page.startAfter(last);
+        const snapshot = await page.get();
+        for (const doc of snapshot.docs) {
+            writer.delete(doc.ref).catch((error) => {
+                console.error(`Suppression impossible de ${doc.ref.path} :`, error.message);
+            });
+        }
+        // Une page à la fois : la mémoire et le débit restent bornés même sur une discussion très longue
+        await writer.flush();
+        deleted += snapshot.size;
+        if (snapshot.size < PAGE_SIZE) return deleted;
+        last = snapshot.docs[snapshot.size - 1];
+    }
+}
+
+/**
+ * Chemin Storage d'une URL de téléchargement Firebase (…/o/<chemin encodé>?alt=media…),
+ * ou null si l'URL n'en est pas une.
+ */
+function storagePathFromUrl(url) {
+    if (!url) return null;
+    const match = /\/o\/([^?#]+)/.exec(url);
+    return match ? decodeURIComponent(match[1]) : null;
+}
+
+/**
+ * Supprime les photos de l'incident : incident_images/{id}.jpg (outbox), incident_images/{id}_*.jpg
+ * (photos remplacées à l'édition) et le fichier pointé par photoUrl pour les anciens noms aléatoires.
+ */
+async function deleteIncidentMedia(bucket, incidentId, photoUrl) {
+    const prefixes = [`${IMAGES_PREFIX}${incidentId}.`, `${IMAGES_PREFIX}${incidentId}_`];
+    let deleted = 0;
+    for (const prefix of prefixes) {
+        const [files] = await bucket.getFiles({ prefix });
+        await Promise.all(files.map((file) => file.delete({ ignoreNotFound: true })));
+        deleted += files.length;
+    }
+    const path = storagePathFromUrl(photoUrl);
+    if (path && !prefixes.some((prefix) => path.startsWith(prefix))) {
+        await bucket.file(path).delete({ ignoreNotFound: true });
+        deleted++;
+    }
+    return deleted;
+}
+
+/**
+ * Supprime les documents qui référencent {@code incidentId}. {@code data} est le contenu
+ * de l'incident supprimé (pour photoUrl) ; {@code bucket} est optionnel (tests sans Storage).
+ * Retourne le nombre d'éléments supprimés de chaque sorte.
+ */
+async function cleanupIncident(db, bucket, incidentId, data) {
+    const incidentRef = db.collection("incidents").doc(incidentId);
+    const writer = db.bulkWriter();
+    const comments = await deletePages(incidentRef.collection("comments"), writer);
+    const counters = await deletePages(incidentRef.collection("counters"), writer);
+    const likes = await deletePages(db.collectionGroup("likes").where("incidentId", "==", incidentId), writer);
+    const notifications = await deletePages(
+        db.collection("notifications").where("idIncidentSource", "==", incidentId), writer);
+    await writer.close();
+    const media = bucket ? await deleteIncidentMedia(bucket, incidentId, data && data.photoUrl) : 0;
+    return { comments, counters, likes, notifications, media };
+}
+
+module.exports = { cleanupIncident, storagePathFromUrl, PAGE_SIZE };
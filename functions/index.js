@@ -1,8 +1,11 @@
 /**
  * Version V2 pour Firebase Functions SDK récent
  */
-const { onDocumentCreated } = require("firebase-functions/v2/firestore");
+const { onDocumentCreated, onDocumentDeleted, onDocumentUpdated, onDocumentWritten } = require("firebase-functions/v2/firestore");
+const { onSchedule } = require("firebase-functions/v2/scheduler");
 const admin = require("firebase-admin");
+const { changedProfileFields, syncProfileFields } = require("./profileSync");
+const { cleanupIncident } = require("./incidentCleanup");
 
 // Initialisation de l'application Firebase Admin
 // Cette fonction permet d'accéder aux services Firebase tels que Firestore et Messaging.
@@ -106,4 +109,133 @@ exports.sendOfficialAlertNotification = onDocumentCreated("official_alerts/{aler
     } catch (error) {
         console.error('Erreur envoi alerte:', error);
     }
-});
\ No newline at end of file
+});
+
+/**
+ * Déclenchée à chaque écriture dans la collection 'categories'.
+ * Incrémente meta/categories.version : les clients gardent le catalogue en cache
+ * et ne le rechargent que lorsque cette version change.
+ */
+exports.bumpCategoriesVersion = onDocumentWritten("categories/{categoryId}", async () => {
+    await admin.firestore().collection("meta").doc("categories").set({
+        version: admin.firestore.FieldValue.increment(1),
+        updatedAt: admin.firestore.FieldValue.serverTimestamp()
+    }, { merge: true });
+});
+
+// Correspondance fragment -> champ dénormalisé sur le document incident
+const COUNTER_FIELDS = { likes: "likesCount", comments: "commentsCount" };
+// Recouvrement entre deux passages : sans effet sur les totaux, chaque fragment est relu en transaction
+const ROLLUP_OVERLAP_MS = 60 * 1000;
+
+/**
+ * Planifiée chaque minute.
+ * Reporte les compteurs distribués incidents/{id}/counters/{n} dans likesCount / commentsCount.
+ * La requête ne sert qu'à trouver les incidents concernés : pour chacun, les fragments sont relus
+ * puis vidés dans une transaction qui met aussi l'incident à jour. Deux passages qui se chevauchent
+ * (ou une relance) ne peuvent donc pas reporter deux fois la même valeur : le second relit des
+ * fragments déjà vidés. Les incréments arrivés entre-temps restent sur le fragment et seront
+ * reportés au passage suivant.
+ * Les totaux reportés ne vivent plus que dans likesCount / commentsCount : aucun client ne doit
+ * réécrire ces champs (les mises à jour de l'app n'écrivent que les champs qu'elles modifient).
+ * La requête collectionGroup("counters") sur updatedAt s'appuie sur l'index déclaré dans
+ * firestore.indexes.json.
+ */
+exports.rollupIncidentCounters = onSchedule("every 1 minutes", async () => {
+    const db = admin.firestore();
+    const metaRef = db.collection("meta").doc("counters_rollup");
+    const startedAt = Date.now();
+
+    const meta = await metaRef.get();
+    const lastRun = meta.exists && meta.get("lastRun") ? meta.get("lastRun").toMillis() : 0;
+    const since = admin.firestore.Timestamp.fromMillis(Math.max(0, lastRun - ROLLUP_OVERLAP_MS));
+
+    const shards = await db.collectionGroup("counters").where("updatedAt", ">=", since).get();
+
+    // Regroupement des fragments par incident
+    const byIncident = new Map();
+    shards.forEach((shard) => {
+        const incidentRef = shard.ref.parent.parent;
+        if (!incidentRef || incidentRef.parent.id !== "incidents") return;
+        if (!byIncident.has(incidentRef.path)) byIncident.set(incidentRef.path, { ref: incidentRef, shardRefs: [] });
+        byIncident.get(incidentRef.path).shardRefs.push(shard.ref);
+    });
+
+    let rolledUp = 0;
+    let failed = 0;
+    for (const { ref, shardRefs } of byIncident.values()) {
+        try {
+            const moved = await db.runTransaction(async (tx) => {
+                const [incident, ...current] = await tx.getAll(ref, ...shardRefs);
+                // Incident supprimé entre-temps : ses fragments sont nettoyés avec lui
+                if (!incident.exists) return false;
+
+                const totals = {};
+                for (const shard of current) {
+                    if (!shard.exists) continue;
+                    const shardUpdate = {};
+                    for (const field of Object.keys(COUNTER_FIELDS)) {
+                        const value = shard.get(field) || 0;
+                        if (value === 0) continue;
+                        totals[field] = (totals[field] || 0) + value;
+                        shardUpdate[field] = admin.firestore.FieldValue.increment(-value);
+                    }
+                    if (Object.keys(shardUpdate).length > 0) tx.update(shard.ref, shardUpdate);
+                }
+
+                const incidentUpdate = {};
+                for (const [field, total] of Object.entries(totals)) {
+                    if (total !== 0) incidentUpdate[COUNTER_FIELDS[field]] = admin.firestore.FieldValue.increment(total);
+                }
+                if (Object.keys(incidentUpdate).length === 0) return false;
+                // Repère de synchronisation des copies locales (SyncEngine côté application)
+                incidentUpdate.updatedAt = admin.firestore.FieldValue.serverTimestamp();
+                tx.update(ref, incidentUpdate);
+                return true;
+            });
+            if (moved) rolledUp++;
+        } catch (error) {
+            failed++;
+            console.error(`Report des compteurs impossible pour ${ref.path} :`, error);
+        }
+    }
+
+    // Après un échec, le repère n'avance pas : les fragments non vidés seront relus au passage suivant
+    if (failed === 0) {
+        await metaRef.set({ lastRun: admin.firestore.Timestamp.fromMillis(startedAt) }, { merge: true });
+    }
+    console.log(`Compteurs reportés pour ${rolledUp} incident(s), ${failed} échec(s).`);
+});
+
+/**
+ * Déclenchée à la suppression d'un incident.
+ * Écrit un marqueur deleted_incidents/{id} : la synchronisation par deltas des applications
+ * ne voit que les documents modifiés, ce marqueur leur permet de retirer l'incident de leur copie locale.
+ * Supprime ensuite, par pages, ce qui référence l'incident (commentaires, compteurs, likes,
+ * notifications, photos) : l'application ne supprime que le document incident.
+ * Chaque étape est idempotente, la fonction peut être relancée sans risque (retry: true).
+ */
+exports.onIncidentDeleted = onDocumentDeleted({ document: "incidents/{incidentId}", retry: true }, async (event) => {
+    const incidentId = event.params.incidentId;
+    await admin.firestore().collection("deleted_incidents").doc(incidentId).set({
+        deletedAt: admin.firestore.FieldValue.serverTimestamp()
+    });
+
+    const data = event.data ? event.data.data() : null;
+    const result = await cleanupIncident(admin.firestore(), admin.storage().bucket(), incidentId, data);
+    console.log(`Incident ${incidentId} nettoyé :`, JSON.stringify(result));
+});
+
+/**
+ * Déclenchée à la modification d'un profil utilisateur.
+ * Si le nom ou la photo changent, les recopie sur tous les incidents et commentaires de l'utilisateur
+ * (nomUtilisateur / auteurPhotoUrl) : l'application n'écrit que son document de profil.
+ */
+exports.syncUserProfile = onDocumentUpdated("utilisateurs/{uid}", async (event) => {
+    const fields = changedProfileFields(event.data.before.data() || {}, event.data.after.data() || {});
+    if (!fields) return;
+
+    const uid = event.params.uid;
+    const { incidents, comments } = await syncProfileFields(admin.firestore(), uid, fields);
+    console.log(`Profil ${uid} recopié sur ${incidents} incident(s) et ${comments} commentaire(s).`);
+});
@@ -0,0 +1,68 @@
+/**
+ * Recopie du profil d'un utilisateur (nom, photo) dans ses incidents et ses commentaires.
+ * Les documents sont lus par pages ordonnées sur l'identifiant et réécrits avec un BulkWriter :
+ * écritures parallèles, limitées en débit et relancées automatiquement en cas d'erreur transitoire.
+ * Séparé de index.js pour être testé contre l'émulateur Firestore.
+ * La lecture des commentaires (collectionGroup("comments") filtré sur idUtilisateur) s'appuie sur
+ * l'index COLLECTION_GROUP déclaré dans firestore.indexes.json : l'émulateur ne l'exige pas,
+ * test/firestoreIndexes.test.js vérifie qu'il est bien déclaré.
+ */
+const { FieldPath, FieldValue } = require("firebase-admin/firestore");
+
+const PAGE_SIZE = 500;
+
+// Champ du profil utilisateur -> champ recopié sur les incidents et commentaires
+const PROFILE_FIELDS = { nom: "nomUtilisateur", photoProfilUrl: "auteurPhotoUrl" };
+
+/**
+ * Retourne les champs dénormalisés à réécrire, ou null si ni le nom ni la photo n'ont changé.
+ */
+function changedProfileFields(before, after) {
+    const fields = {};
+    for (const [source, target] of Object.entries(PROFILE_FIELDS)) {
+        const value = after[source];
+        if (value === undefined || value === before[source]) continue;
+        fields[target] = value;
+    }
+    return Object.keys(fields).length > 0 ? fields : null;
+}
+
+async function rewritePages(query, writer, update) {
+    let written = 0;
+    let last = null;
+    for (;;) {
+        let page = query.orderBy(FieldPath.documentId()).limit(PAGE_SIZE);
+        if (last) page = page.startAfter(last);
+        const snapshot = await page.get();
+        for (const doc of snapshot.docs) {
+            // Un document supprimé entre la lecture et l'écriture ne doit pas faire échouer le reste
+            writer.update(doc.ref, update).catch((error) => {
+                console.error(`Recopie du profil impossible sur ${doc.ref.path} :`, error.message);
+            });
+        }
+        written += snapshot.size;
+        if (snapshot.size < PAGE_SIZE) return written;
+        last = snapshot.docs[snapshot.size - 1];
+    }
+}
+
+/**
+ * Réécrit {@code fields} sur tous les incidents et commentaires de {@code uid}.
+ * Retourne le nombre de documents de chaque sorte.
+ */
+async function syncProfileFields(db, uid, fields) {
+    const writer = db.bulkWriter();
+    const incidents = await rewritePages(
+        db.collection("incidents").where("idUtilisateur", "==", uid),
+        writer,
+        // Repère de synchronisation des copies locales (SyncEngine côté application)
+        { ...fields, updatedAt: FieldValue.serverTimestamp() });
+    const comments = await rewritePages(
+        db.collectionGroup("comments").where("idUtilisateur", "==", uid),
+        writer,
+        fields);
+    await writer.close();
+    return { incidents, comments };
+}
+
+module.exports = { changedProfileFields, syncProfileFields, PAGE_SIZE };
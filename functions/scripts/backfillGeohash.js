@@ -0,0 +1,70 @@
+/**
+ * Migration ponctuelle : calcule le champ 'geohash' des incidents créés avant son ajout,
+ * pour qu'ils apparaissent dans les requêtes par zone visible de la carte.
+ * Renseigne aussi 'updatedAt' s'il manque, pour que la synchronisation par deltas les voie.
+ * Même encodage et même précision que GeoHash.java côté application.
+ *
+ * Usage : GOOGLE_APPLICATION_CREDENTIALS=... node scripts/backfillGeohash.js
+ */
+const admin = require("firebase-admin");
+
+const BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+const STORED_PRECISION = 9;
+
+function encodeGeohash(latitude, longitude, precision) {
+    let minLat = -90, maxLat = 90, minLng = -180, maxLng = 180;
+    let hash = "";
+    let evenBit = true, bit = 0, ch = 0;
+
+    while (hash.length < precision) {
+        if (evenBit) {
+            const mid = (minLng + maxLng) / 2;
+            if (longitude >= mid) { ch = (ch << 1) | 1; minLng = mid; } else { ch = ch << 1; maxLng = mid; }
+        } else {
+            const mid = (minLat + maxLat) / 2;
+            if (latitude >= mid) { ch = (ch << 1) | 1; minLat = mid; } else { ch = ch << 1; maxLat = mid; }
+        }
+        evenBit = !evenBit;
+        if (++bit === 5) {
+            hash += BASE32.charAt(ch);
+            bit = 0;
+            ch = 0;
+        }
+    }
+    return hash;
+}
+
+async function backfill() {
+    admin.initializeApp();
+    const db = admin.firestore();
+    const writer = db.bulkWriter();
+    let updated = 0;
+
+    const snapshot = await db.collection("incidents").get();
+    for (const doc of snapshot.docs) {
+        const lat = doc.get("latitude");
+        const lng = doc.get("longitude");
+        if (typeof lat !== "number" || typeof lng !== "number") continue;
+
+        const geohash = encodeGeohash(lat, lng, STORED_PRECISION);
+        const hasUpdatedAt = doc.get("updatedAt") != null;
+        if (doc.get("geohash") === geohash && hasUpdatedAt) continue;
+
+        const update = { geohash };
+        if (!hasUpdatedAt) update.updatedAt = admin.firestore.FieldValue.serverTimestamp();
+        writer.update(doc.ref, update);
+        updated++;
+    }
+
+    await writer.close();
+    console.log(`Geohash calculé pour ${updated} incident(s).`);
+}
+
+if (require.main === module) {
+    backfill().catch((error) => {
+        console.error("Erreur lors de la migration :", error);
+        process.exit(1);
+    });
+}
+
+module.exports = { encodeGeohash };
@@ -0,0 +1,41 @@
+/**
+ * Migration ponctuelle : déplace les anciens tableaux 'likedBy' des incidents
+ * vers l'index utilisateurs/{uid}/likes/{incidentId}, puis supprime le champ.
+ * Le compteur likesCount n'est pas modifié (il reflétait déjà la taille du tableau).
+ *
+ * Usage : GOOGLE_APPLICATION_CREDENTIALS=... node scripts/migrateLikedBy.js
+ */
+const admin = require("firebase-admin");
+
+admin.initializeApp();
+const db = admin.firestore();
+
+async function migrate() {
+    const writer = db.bulkWriter();
+    let incidents = 0;
+    let likes = 0;
+
+    const snapshot = await db.collection("incidents").where("likedBy", "!=", null).get();
+    for (const doc of snapshot.docs) {
+        const likedBy = doc.get("likedBy");
+        if (!Array.isArray(likedBy)) continue;
+
+        for (const uid of likedBy) {
+            writer.set(db.collection("utilisateurs").doc(uid).collection("likes").doc(doc.id), {
+                incidentId: doc.id,
+                date: admin.firestore.FieldValue.serverTimestamp()
+            });
+            likes++;
+        }
+        writer.update(doc.ref, { likedBy: admin.firestore.FieldValue.delete() });
+        incidents++;
+    }
+
+    await writer.close();
+    console.log(`Migration terminée : ${incidents} incidents, ${likes} likes déplacés.`);
+}
+
+migrate().catch((error) => {
+    console.error("Erreur lors de la migration :", error);
+    process.exit(1);
+});
@@ -0,0 +1,29 @@
+/**
+ * Les requêtes collectionGroup des fonctions ont besoin d'un index de portée COLLECTION_GROUP,
+ * que Firestore ne crée pas par défaut et que l'émulateur n'exige pas : sans déclaration dans
+ * firestore.indexes.json, elles échouent en production (FAILED_PRECONDITION).
+ */
+const { test } = require("node:test");
+const assert = require("node:assert");
+const path = require("node:path");
+
+const { fieldOverrides = [] } = require(path.join(__dirname, "..", "..", "firestore.indexes.json"));
+
+// [collection, champ] filtrés par une requête collectionGroup dans les fonctions
+const COLLECTION_GROUP_FIELDS = [
+    ["comments", "idUtilisateur"], // profileSync.syncProfileFields
+    ["counters", "updatedAt"],     // index.rollupIncidentCounters
+    ["likes", "incidentId"],       // incidentCleanup.cleanupIncident
+];
+
+for (const [collectionGroup, fieldPath] of COLLECTION_GROUP_FIELDS) {
+    test(`index collectionGroup déclaré pour ${collectionGroup}.${fieldPath}`, () => {
+        const override = fieldOverrides.find((o) => o.collectionGroup === collectionGroup && o.fieldPath === fieldPath);
+        assert.ok(override, "champ absent de fieldOverrides");
+        assert.ok(override.indexes.some((i) => i.queryScope === "COLLECTION_GROUP" && i.order === "ASCENDING"),
+            "index COLLECTION_GROUP ascendant manquant");
+        // Une surcharge remplace les index par défaut : ceux de la collection doivent être redéclarés
+        assert.ok(override.indexes.some((i) => i.queryScope === "COLLECTION" && i.order === "ASCENDING"),
+            "index COLLECTION par défaut non conservé");
+    });
+}
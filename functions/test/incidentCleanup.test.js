@@ -0,0 +1,50 @@
+/**
+ * Tests du nettoyage d'un incident supprimé contre l'émulateur Firestore.
+ * Lancement : npm run test:emulator (ou npm test avec FIRESTORE_EMULATOR_HOST défini).
+ */
+const { test } = require("node:test");
+const assert = require("node:assert");
+
+const { cleanupIncident, storagePathFromUrl } = require("../incidentCleanup");
+
+const emulator = process.env.FIRESTORE_EMULATOR_HOST;
+
+test("storagePathFromUrl décode le chemin d'une URL de téléchargement", () => {
+    assert.strictEqual(
+        storagePathFromUrl("https://firebasestorage.googleapis.com/v0/b/app.appspot.com/o/incident_images%2Fabc_1.jpg?alt=media&token=t"),
+        "incident_images/abc_1.jpg");
+    assert.strictEqual(storagePathFromUrl(""), null);
+    assert.strictEqual(storagePathFromUrl("https://example.com/photo.jpg"), null);
+});
+
+test("cleanupIncident supprime ce qui référence l'incident, et seulement cela", { skip: !emulator && "émulateur Firestore absent" }, async (t) => {
+    const admin = require("firebase-admin");
+    const app = admin.initializeApp({ projectId: "demo-safecity" }, "incidentCleanup-test");
+    const db = app.firestore();
+    t.after(() => app.delete());
+
+    const id = "inc-" + Date.now();
+    const otherId = id + "-other";
+    const seed = db.bulkWriter();
+    for (const incidentId of [id, otherId]) {
+        const ref = db.collection("incidents").doc(incidentId);
+        for (let i = 0; i < 3; i++) seed.set(ref.collection("comments").doc(), { texte: `#${i}` });
+        seed.set(ref.collection("counters").doc("0"), { likes: 1 });
+        seed.set(db.collection("utilisateurs").doc("u1").collection("likes").doc(incidentId), { incidentId });
+        seed.set(db.collection("notifications").doc(), { idIncidentSource: incidentId, lu: false });
+    }
+    seed.set(db.collection("incidents").doc(otherId), { description: "reste" });
+    await seed.close();
+
+    const result = await cleanupIncident(db, null, id, {});
+    assert.deepStrictEqual(result, { comments: 3, counters: 1, likes: 1, notifications: 1, media: 0 });
+
+    // Relancée après un succès, elle ne trouve plus rien
+    const again = await cleanupIncident(db, null, id, {});
+    assert.deepStrictEqual(again, { comments: 0, counters: 0, likes: 0, notifications: 0, media: 0 });
+
+    const otherRef = db.collection("incidents").doc(otherId);
+    assert.strictEqual((await otherRef.collection("comments").get()).size, 3);
+    assert.strictEqual((await db.collectionGroup("likes").where("incidentId", "==", otherId).get()).size, 1);
+    assert.strictEqual((await db.collection("notifications").where("idIncidentSource", "==", otherId).get()).size, 1);
+});
@@ -0,0 +1,49 @@
+/**
+ * Tests de la recopie du profil contre l'émulateur Firestore.
+ * Lancement : npm run test:emulator (ou npm test avec FIRESTORE_EMULATOR_HOST défini).
+ */
+const { test } = require("node:test");
+const assert = require("node:assert");
+
+const { changedProfileFields, syncProfileFields, PAGE_SIZE } = require("../profileSync");
+
+const emulator = process.env.FIRESTORE_EMULATOR_HOST;
+
+test("changedProfileFields ne retient que le nom et la photo modifiés", () => {
+    assert.deepStrictEqual(
+        changedProfileFields({ nom: "A", photoProfilUrl: "p", score: 1 }, { nom: "B", photoProfilUrl: "p", score: 2 }),
+        { nomUtilisateur: "B" });
+    assert.deepStrictEqual(
+        changedProfileFields({ nom: "A" }, { nom: "A", photoProfilUrl: "q" }),
+        { auteurPhotoUrl: "q" });
+    assert.strictEqual(changedProfileFields({ nom: "A", score: 1 }, { nom: "A", score: 5 }), null);
+});
+
+test("syncProfileFields réécrit incidents et commentaires au-delà d'une page", { skip: !emulator && "émulateur Firestore absent" }, async (t) => {
+    const admin = require("firebase-admin");
+    const app = admin.initializeApp({ projectId: "demo-safecity" }, "profileSync-test");
+    const db = app.firestore();
+    t.after(() => app.delete());
+
+    const uid = "user-" + Date.now();
+    const incidentCount = PAGE_SIZE + 3;
+    let seed = db.bulkWriter();
+    for (let i = 0; i < incidentCount; i++) {
+        const ref = db.collection("incidents").doc(`${uid}-inc-${i}`);
+        seed.set(ref, { idUtilisateur: uid, nomUtilisateur: "Ancien", description: `#${i}` });
+        if (i < 2) seed.set(ref.collection("comments").doc(), { idUtilisateur: uid, nomUtilisateur: "Ancien" });
+    }
+    // Document d'un autre auteur : ne doit pas bouger
+    seed.set(db.collection("incidents").doc(`${uid}-other`), { idUtilisateur: "quelqu-un", nomUtilisateur: "Autre" });
+    await seed.close();
+
+    const result = await syncProfileFields(db, uid, { nomUtilisateur: "Nouveau" });
+    assert.deepStrictEqual(result, { incidents: incidentCount, comments: 2 });
+
+    const incidents = await db.collection("incidents").where("idUtilisateur", "==", uid).get();
+    assert.ok(incidents.docs.every((d) => d.get("nomUtilisateur") === "Nouveau" && d.get("updatedAt")));
+    const comments = await db.collectionGroup("comments").where("idUtilisateur", "==", uid).get();
+    assert.ok(comments.docs.every((d) => d.get("nomUtilisateur") === "Nouveau"));
+    const other = await db.collection("incidents").doc(`${uid}-other`).get();
+    assert.strictEqual(other.get("nomUtilisateur"), "Autre");
+});